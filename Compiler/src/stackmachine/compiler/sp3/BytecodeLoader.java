@@ -0,0 +1,186 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Loads a program written by BytecodeWriter
+ *
+ * The program is read from a buffer, a file mapped in memory or the bytes of a stream, so no
+ * stream is between the bytes and the decoded code.
+ */
+public class BytecodeLoader {
+
+    public StackMachineCode load(String fileName) throws Exception {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    } // method load
+
+    public StackMachineCode load(InputStream input) throws Exception {
+        return load(ByteBuffer.wrap(input.readAllBytes()));
+    } // method load
+
+    public StackMachineCode load(ByteBuffer input) throws Exception {
+        try {
+            return read(input.duplicate());
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    } // method load
+
+    private StackMachineCode read(ByteBuffer binary) throws Exception {
+        StackMachineCode code = new StackMachineCode();
+
+        byte[] magic = new byte[BytecodeWriter.MAGIC.length];
+
+        binary.get(magic);
+
+        if (!Arrays.equals(magic, BytecodeWriter.MAGIC))
+            throw new Exception("\nError: not a stack machine binary program");
+
+        int version = Byte.toUnsignedInt(binary.get());
+
+        if (version < 1 || version > BytecodeWriter.VERSION)
+            throw new Exception("\nError: unsupported binary program version " + version);
+
+        // constant pool
+
+        long[] ints = new long[readCount(binary)];
+
+        for (int i = 0; i < ints.length; i++) {
+            long value = readVarint(binary);
+            ints[i] = (value >>> 1) ^ -(value & 1);
+        }
+
+        long[] floats = new long[readCount(binary)];
+
+        for (int i = 0; i < floats.length; i++)
+            floats[i] = binary.getLong();
+
+        // symbol table
+
+        int symbols = readCount(binary);
+
+        for (int i = 0; i < symbols; i++) {
+            byte[] name = new byte[readCount(binary)];
+
+            binary.get(name);
+
+            String symbol = new String(name, StandardCharsets.UTF_8);
+
+            int kind = Byte.toUnsignedInt(binary.get());
+            String type = BytecodeWriter.TYPES[Byte.toUnsignedInt(binary.get())];
+
+            if (kind == BytecodeWriter.ARRAY)
+                code.declareArray(symbol, type, readCount(binary));
+            else if (type.equals("unknown"))
+                code.symbol(symbol);
+            else
+                code.declare(symbol, type);
+        }
+
+        // memory layout
+
+        if (version >= 2 && Byte.toUnsignedInt(binary.get()) == 1) {
+            int memorySize = readCount(binary);
+            int[] addresses = new int[symbols];
+
+            for (int i = 0; i < symbols; i++)
+                addresses[i] = readCount(binary);
+
+            code.setLayout(addresses, memorySize);
+        }
+
+        // label table
+
+        if (version >= 3 && Byte.toUnsignedInt(binary.get()) == 1) {
+            Map<Long, Integer> labels = new LinkedHashMap<Long, Integer>();
+            int count = readCount(binary);
+
+            for (int i = 0; i < count; i++) {
+                long label = readVarint(binary);
+                labels.put(label, readCount(binary));
+            }
+
+            code.setLabelTable(labels);
+        }
+
+        // line table
+
+        Map<Integer, Integer> lines = new HashMap<Integer, Integer>();
+
+        if (version >= 4 && Byte.toUnsignedInt(binary.get()) == 1) {
+            int count = readCount(binary);
+
+            for (int i = 0; i < count; i++) {
+                int index = readCount(binary);
+                lines.put(index, readCount(binary));
+            }
+        }
+
+        // code
+
+        int count = readCount(binary);
+
+        for (int i = 0; i < count; i++) {
+            Opcode opcode = Opcode.valueOf(Byte.toUnsignedInt(binary.get()));
+
+            if (lines.containsKey(i))
+                code.setLine(lines.get(i));
+
+            switch (opcode.getOperand()) {
+                case INT:
+                    code.add(opcode, ints[readCount(binary)]);
+                    break;
+                case FLOAT:
+                    code.add(opcode, floats[readCount(binary)]);
+                    break;
+                case SYMBOL:
+                case LABEL:
+                    code.add(opcode, readVarint(binary));
+                    break;
+                case SYMBOL_INT:
+                    long symbol = readVarint(binary);
+                    code.add(opcode, symbol, ints[readCount(binary)]);
+                    break;
+                default:
+                    code.add(opcode);
+            }
+        }
+
+        return code;
+    } // method read
+
+    private static int readCount(ByteBuffer input) {
+        return (int) readVarint(input);
+    } // method readCount
+
+    static long readVarint(ByteBuffer input) {
+        long value = 0;
+        int shift = 0;
+        int b;
+
+        do {
+            b = input.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    } // method readVarint
+
+} // class BytecodeLoader
\ No newline at end of file
@@ -0,0 +1,194 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Binary format of a stack machine program
+ *
+ * header    ->  'S' 'M' 'B' 'C' version
+ * ints      ->  count { zigzag varint }
+ * floats    ->  count { 8 byte IEEE 754 double }
+ * symbols   ->  count { name kind type [size] }
+ * layout    ->  0 | 1 memory-size { address }
+ * labels    ->  0 | 1 count { label index }
+ * lines     ->  0 | 1 count { index line }
+ * code      ->  count { opcode [operand] }
+ *
+ * Counts, sizes and operands are unsigned varints (7 bits per byte, low bits first).
+ * A name is its length followed by its UTF-8 bytes, the kind is a byte (variable or
+ * array) and the type is a byte (unknown, int, float or boolean). The operand of a
+ * push is an index in the constant pool or in the symbol table, the operand of a
+ * label or a jump is the number of the label. The layout gives the address of every
+ * symbol when the variables were resolved to slots (version 2). When the labels were
+ * resolved the operand of a jump is the index of an instruction and the label table keeps
+ * the index of every label (version 3). A superinstruction that takes a symbol and an
+ * int constant has the index of the symbol followed by the index in the constant pool.
+ * The line table gives the line of the program where every run of instructions from the
+ * same line starts (version 4).
+ */
+public class BytecodeWriter {
+    public static final byte[] MAGIC = { 'S', 'M', 'B', 'C' };
+    public static final int VERSION = 4;
+
+    public static final int VARIABLE = 0;
+    public static final int ARRAY = 1;
+
+    public static final String[] TYPES = { "unknown", "int", "float", "boolean" };
+
+    private List<Long> ints;
+    private List<Long> floats;
+
+    private Map<Long, Integer> intIndex;
+    private Map<Long, Integer> floatIndex;
+
+    public void write(StackMachineCode code, OutputStream output) throws Exception {
+        this.ints = new ArrayList<Long>();
+        this.floats = new ArrayList<Long>();
+
+        this.intIndex = new HashMap<Long, Integer>();
+        this.floatIndex = new HashMap<Long, Integer>();
+
+        // the code is encoded first because it fills the constant pool
+
+        ByteArrayOutputStream instructions = new ByteArrayOutputStream(code.size() * 2);
+
+        for (int i = 0; i < code.size(); i++) {
+            Opcode opcode = code.getOpcode(i);
+            long operand = code.getOperand(i);
+
+            instructions.write(opcode.ordinal());
+
+            switch (opcode.getOperand()) {
+                case INT:
+                    writeVarint(instructions, constant(this.ints, this.intIndex, operand));
+                    break;
+                case FLOAT:
+                    writeVarint(instructions, constant(this.floats, this.floatIndex, operand));
+                    break;
+                case SYMBOL:
+                case LABEL:
+                    writeVarint(instructions, operand);
+                    break;
+                case SYMBOL_INT:
+                    writeVarint(instructions, operand);
+                    writeVarint(instructions, constant(this.ints, this.intIndex, code.getConstant(i)));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        DataOutputStream binary = new DataOutputStream(output);
+
+        binary.write(MAGIC);
+        binary.writeByte(VERSION);
+
+        writeVarint(binary, this.ints.size());
+
+        for (long value : this.ints)
+            writeVarint(binary, (value << 1) ^ (value >> 63));
+
+        writeVarint(binary, this.floats.size());
+
+        for (long value : this.floats)
+            binary.writeLong(value);
+
+        writeVarint(binary, code.getSymbolCount());
+
+        for (int i = 0; i < code.getSymbolCount(); i++) {
+            byte[] name = code.getName(i).getBytes(StandardCharsets.UTF_8);
+
+            writeVarint(binary, name.length);
+            binary.write(name);
+
+            binary.writeByte(code.isArray(i) ? ARRAY : VARIABLE);
+            binary.writeByte(type(code.getType(i)));
+
+            if (code.isArray(i))
+                writeVarint(binary, code.getArraySize(i));
+        }
+
+        binary.writeByte(code.hasLayout() ? 1 : 0);
+
+        if (code.hasLayout()) {
+            writeVarint(binary, code.getMemorySize());
+
+            for (int i = 0; i < code.getSymbolCount(); i++)
+                writeVarint(binary, code.getAddress(i));
+        }
+
+        binary.writeByte(code.isResolved() ? 1 : 0);
+
+        if (code.isResolved()) {
+            writeVarint(binary, code.getLabelTable().size());
+
+            for (Map.Entry<Long, Integer> label : code.getLabelTable().entrySet()) {
+                writeVarint(binary, label.getKey());
+                writeVarint(binary, label.getValue());
+            }
+        }
+
+        binary.writeByte(code.hasLines() ? 1 : 0);
+
+        if (code.hasLines()) {
+            List<Integer> runs = new ArrayList<Integer>();
+
+            for (int i = 0; i < code.size(); i++)
+                if (i == 0 || code.getLine(i) != code.getLine(i - 1))
+                    runs.add(i);
+
+            writeVarint(binary, runs.size());
+
+            for (int index : runs) {
+                writeVarint(binary, index);
+                writeVarint(binary, code.getLine(index));
+            }
+        }
+
+        writeVarint(binary, code.size());
+        instructions.writeTo(binary);
+
+        binary.flush();
+    } // method write
+
+    private static int constant(List<Long> pool, Map<Long, Integer> index, long value) {
+        Integer position = index.get(value);
+
+        if (position == null) {
+            position = pool.size();
+            pool.add(value);
+            index.put(value, position);
+        }
+
+        return position;
+    } // method constant
+
+    private static int type(String type) {
+        for (int i = 1; i < TYPES.length; i++)
+            if (TYPES[i].equals(type))
+                return i;
+
+        return 0;
+    } // method type
+
+    static void writeVarint(OutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        output.write((int) value);
+    } // method writeVarint
+
+} // class BytecodeWriter
\ No newline at end of file
@@ -0,0 +1,250 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/*
+ * On-disk cache of compiled programs
+ *
+ * An entry is the output of a compilation, stored in a file named by the SHA-256 of the
+ * compiler version, the options and the text of the program. The version of the compiler is its
+ * number and the fingerprint of its classes, so a compiler that was changed without a new
+ * number does not take the entries of the old one. A hit copies the entry to the
+ * output file instead of compiling the program again. When the entries take more than the
+ * maximum size, the least recently used ones are removed. The last modification time of
+ * an entry is its last use, so the order survives from one run to the next.
+ */
+public class CompilationCache {
+    private final Path directory;
+    private final long maximumSize;
+
+    // entries from the least to the most recently used, with their size
+
+    private final LinkedHashMap<String, Long> entries;
+    private long size;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    public CompilationCache(Path directory, long maximumSize) throws IOException {
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        this.size = 0;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+
+        Files.createDirectories(directory);
+
+        List<Path> files = new ArrayList<Path>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.sm")) {
+            for (Path file : stream)
+                files.add(file);
+        }
+
+        files.sort((a, b) -> lastUse(a).compareTo(lastUse(b)));
+
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+
+            this.entries.put(name.substring(0, name.length() - 3), Files.size(file));
+            this.size = this.size + Files.size(file);
+        }
+    } // constructor CompilationCache
+
+    // key of the compilation of a program with the given compiler version and options
+
+    public static String key(String version, String options, byte[] program) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+        digest.update(version.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(options.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(program);
+
+        return hex(digest.digest());
+    } // method key
+
+    // SHA-256 of the class files of the package of the type, read from where the type was loaded,
+    // or null when they cannot be read
+
+    public static String fingerprint(Class<?> type) {
+        String folder = type.getPackageName().replace('.', '/') + "/";
+        Map<String, byte[]> classes = new TreeMap<String, byte[]>();
+
+        try {
+            Path location = Paths.get(type.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+            if (Files.isDirectory(location)) {
+                try (Stream<Path> files = Files.list(location.resolve(folder))) {
+                    for (Path file : (Iterable<Path>) files::iterator)
+                        if (file.getFileName().toString().endsWith(".class"))
+                            classes.put(file.getFileName().toString(), Files.readAllBytes(file));
+                }
+            } else {
+                try (JarFile jar = new JarFile(location.toFile())) {
+                    for (JarEntry entry : Collections.list(jar.entries()))
+                        if (entry.getName().startsWith(folder) && entry.getName().indexOf('/', folder.length()) < 0 && entry.getName().endsWith(".class"))
+                            classes.put(entry.getName().substring(folder.length()), jar.getInputStream(entry).readAllBytes());
+                }
+            }
+
+            if (classes.isEmpty())
+                return null;
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            for (Map.Entry<String, byte[]> file : classes.entrySet()) {
+                digest.update(file.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(file.getValue());
+            }
+
+            return hex(digest.digest());
+        } catch (Exception e) {
+            return null;
+        }
+    } // method fingerprint
+
+    private static String hex(byte[] bytes) {
+        StringBuilder text = new StringBuilder();
+
+        for (byte b : bytes)
+            text.append(String.format("%02x", b));
+
+        return text.toString();
+    } // method hex
+
+    // copies the entry of the key to the output file, false if there is no entry
+
+    public boolean fetch(String key, Path output) throws IOException {
+        Path entry = entry(key);
+
+        synchronized (this) {
+            if (this.entries.get(key) == null) {
+                this.misses.incrementAndGet();
+                return false;
+            }
+        }
+
+        try {
+            Files.copy(entry, output, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+
+            // the entry was removed by another compilation or outside of the compiler
+
+            synchronized (this) {
+                remove(key);
+            }
+
+            this.misses.incrementAndGet();
+            return false;
+        }
+
+        this.hits.incrementAndGet();
+        return true;
+    } // method fetch
+
+    // stores a copy of the output file as the entry of the key
+
+    public void store(String key, Path output) throws IOException {
+        Path temporary = Files.createTempFile(this.directory, key, ".tmp");
+
+        try {
+            Files.copy(output, temporary, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporary, entry(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        synchronized (this) {
+            remove(key);
+
+            long entrySize = Files.size(entry(key));
+
+            this.entries.put(key, entrySize);
+            this.size = this.size + entrySize;
+
+            // the least recently used entries are removed, the new entry is always kept
+
+            Iterator<Map.Entry<String, Long>> oldest = this.entries.entrySet().iterator();
+
+            while (this.size > this.maximumSize && this.entries.size() > 1) {
+                Map.Entry<String, Long> eldest = oldest.next();
+
+                Files.deleteIfExists(entry(eldest.getKey()));
+
+                this.size = this.size - eldest.getValue();
+                oldest.remove();
+            }
+        }
+    } // method store
+
+    public long getHits() {
+        return this.hits.get();
+    } // method getHits
+
+    public long getMisses() {
+        return this.misses.get();
+    } // method getMisses
+
+    public synchronized int getEntries() {
+        return this.entries.size();
+    } // method getEntries
+
+    // size in bytes of the entries
+
+    public synchronized long getSize() {
+        return this.size;
+    } // method getSize
+
+    @Override
+    public String toString() {
+        return String.format("compilation cache: %d hits, %d misses, %d entries, %d bytes", getHits(), getMisses(), getEntries(), getSize());
+    } // method toString
+
+    private Path entry(String key) {
+        return this.directory.resolve(key + ".sm");
+    } // method entry
+
+    private void remove(String key) {
+        Long entrySize = this.entries.remove(key);
+
+        if (entrySize != null)
+            this.size = this.size - entrySize;
+    } // method remove
+
+    private static FileTime lastUse(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    } // method lastUse
+
+} // class CompilationCache
\ No newline at end of file
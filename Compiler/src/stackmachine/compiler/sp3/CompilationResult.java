@@ -0,0 +1,57 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import java.nio.file.Path;
+
+/*
+ * Result of the compilation of one program in a batch: the output file when it compiled,
+ * or the error that stopped it
+ */
+public class CompilationResult {
+    private final Path program;
+    private final Path output;
+    private final Exception error;
+    private final long time;
+
+    public CompilationResult(Path program, Path output, Exception error, long time) {
+        this.program = program;
+        this.output = output;
+        this.error = error;
+        this.time = time;
+    } // constructor CompilationResult
+
+    public Path getProgram() {
+        return this.program;
+    } // method getProgram
+
+    public Path getOutput() {
+        return this.output;
+    } // method getOutput
+
+    public boolean isSuccess() {
+        return this.error == null;
+    } // method isSuccess
+
+    // the error of a program that did not compile, or null
+
+    public Exception getError() {
+        return this.error;
+    } // method getError
+
+    // time of the compilation in nanoseconds
+
+    public long getTime() {
+        return this.time;
+    } // method getTime
+
+    @Override
+    public String toString() {
+        if (isSuccess())
+            return String.format("'%s' compiled successfully to '%s'", this.program, this.output);
+
+        return String.format("'%s' failed:%s", this.program, this.error.getMessage());
+    } // method toString
+
+} // class CompilationResult
\ No newline at end of file
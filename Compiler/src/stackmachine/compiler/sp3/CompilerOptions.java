@@ -0,0 +1,132 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+/*
+ * Options of the stack machine compiler
+ *
+ * By default the code is optimized with the default peephole rules and written in the
+ * textual form that every stack machine reads.
+ */
+public class CompilerOptions {
+    private PeepholeOptimizer optimizer;
+    private boolean slots;
+    private boolean labels;
+    private boolean labelTable;
+    private boolean typed;
+    private boolean superinstructions;
+    private CompilationCache cache;
+    private boolean lineTable;
+
+    public CompilerOptions() {
+        this.optimizer = new PeepholeOptimizer();
+        this.slots = false;
+        this.labels = false;
+        this.labelTable = false;
+        this.typed = false;
+        this.superinstructions = false;
+        this.cache = null;
+        this.lineTable = false;
+    } // constructor CompilerOptions
+
+    public PeepholeOptimizer getOptimizer() {
+        return this.optimizer;
+    } // method getOptimizer
+
+    // the optimizer may be null to write the code exactly as the parser emits it
+
+    public void setOptimizer(PeepholeOptimizer optimizer) {
+        this.optimizer = optimizer;
+    } // method setOptimizer
+
+    public boolean getSlots() {
+        return this.slots;
+    } // method getSlots
+
+    // resolves the variables to slots in memory, loadvar and storevar replace the pushes of
+    // their names and a header describes the memory layout
+
+    public void setSlots(boolean slots) {
+        this.slots = slots;
+    } // method setSlots
+
+    public boolean getResolveLabels() {
+        return this.labels;
+    } // method getResolveLabels
+
+    // removes the labels and makes every jump go to the index of an instruction
+
+    public void setResolveLabels(boolean labels) {
+        this.labels = labels;
+    } // method setResolveLabels
+
+    public boolean getLabelTable() {
+        return this.labelTable;
+    } // method getLabelTable
+
+    // keeps the index of every label in .label directives when the labels are resolved
+
+    public void setLabelTable(boolean labelTable) {
+        this.labelTable = labelTable;
+    } // method setLabelTable
+
+    public boolean getTypedOpcodes() {
+        return this.typed;
+    } // method getTypedOpcodes
+
+    // emits the operators specialized for int and float operands, iadd, fadd, ilt, flt, ..., with
+    // an i2f where an int operand meets a float one, for stack machines that read them
+
+    public void setTypedOpcodes(boolean typed) {
+        this.typed = typed;
+    } // method setTypedOpcodes
+
+    public boolean getSuperinstructions() {
+        return this.superinstructions;
+    } // method getSuperinstructions
+
+    // replaces frequent sequences of instructions with superinstructions, incvar, storeconst,
+    // loadelem, storeelem and the relational jumps, for stack machines that read them
+
+    public void setSuperinstructions(boolean superinstructions) {
+        this.superinstructions = superinstructions;
+    } // method setSuperinstructions
+
+    public boolean getLineTable() {
+        return this.lineTable;
+    } // method getLineTable
+
+    // writes the line of the program of every instruction, as .line directives in the text
+    // and as a section of the binary format
+
+    public void setLineTable(boolean lineTable) {
+        this.lineTable = lineTable;
+    } // method setLineTable
+
+    public CompilationCache getCache() {
+        return this.cache;
+    } // method getCache
+
+    // a program whose text, options and compiler version are in the cache is copied from the
+    // cache instead of compiled, the cache may be null to compile every program
+
+    public void setCache(CompilationCache cache) {
+        this.cache = cache;
+    } // method setCache
+
+    // text of the options that change the code, part of the key of the compilation cache
+
+    public String getKey() {
+        String rules = this.optimizer == null ? "none" : String.join(",", this.optimizer.getRuleNames());
+
+        return "optimizer=" + rules
+                + ";slots=" + this.slots
+                + ";labels=" + this.labels
+                + ";labelTable=" + this.labelTable
+                + ";typed=" + this.typed
+                + ";superinstructions=" + this.superinstructions
+                + ";lineTable=" + this.lineTable;
+    } // method getKey
+
+} // class CompilerOptions
\ No newline at end of file
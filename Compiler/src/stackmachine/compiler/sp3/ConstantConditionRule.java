@@ -0,0 +1,39 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+/*
+ * push c, gofalse label N  ->  nothing       if c is true
+ *                          ->  goto label N  if c is false
+ */
+public class ConstantConditionRule implements IPeepholeRule {
+
+    @Override
+    public String getName() {
+        return "constant condition";
+    } // method getName
+
+    // the rule keeps nothing, so one rule serves every optimization
+
+    @Override
+    public IPeepholeRule copy() {
+        return this;
+    } // method copy
+
+    @Override
+    public void prepare(StackMachineCode code) {
+    } // method prepare
+
+    @Override
+    public int apply(StackMachineCode code, int index, StackMachineCode optimized) {
+        if (code.getOpcode(index) != Opcode.PUSH_INT || index + 1 >= code.size() || code.getOpcode(index + 1) != Opcode.GOFALSE)
+            return 0;
+
+        if (code.getOperand(index) == 0)
+            optimized.add(Opcode.GOTO, code.getOperand(index + 1));
+
+        return 2;
+    } // method apply
+
+} // class ConstantConditionRule
\ No newline at end of file
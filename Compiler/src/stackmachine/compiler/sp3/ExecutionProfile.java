@@ -0,0 +1,342 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntToLongFunction;
+
+/*
+ * Exact execution counts of one run of a program on the stack machine
+ *
+ * The profile counts the executions of every instruction of the decoded program, in the order
+ * of the code, with the line of the program it was compiled from. A block starts at the label
+ * of a jump or after a jump or a halt, and is named by its label when the code kept a label
+ * table. A conditional jump is taken when the value is false and the machine jumps.
+ *
+ * The file of a profile is text, one record per line, so the compiler can read it back:
+ *
+ * .profile sm factorial 10.txt
+ * instruction 0 3 PUSH_ADDRESS 1
+ * block 4 1 11
+ * branch 7 1 10
+ *
+ * an instruction is its index, line, opcode and executions, a block the index of its first
+ * instruction, its label or -1 and its executions, and a branch the index of the jump, the
+ * times it was taken and the times it was not.
+ */
+public class ExecutionProfile {
+
+    // instructions of the hottest list of the report
+
+    private static final int HOTTEST = 20;
+
+    private String program;
+
+    private List<Integer> lines;
+    private List<Opcode> opcodes;
+    private List<Long> executions;
+
+    private List<Integer> blockStarts;
+    private List<Long> blockLabels;
+    private List<Long> blockExecutions;
+
+    private List<Integer> branchIndexes;
+    private List<Long> taken;
+    private List<Long> notTaken;
+
+    public ExecutionProfile(String program) {
+        this.program = program;
+
+        this.lines = new ArrayList<Integer>();
+        this.opcodes = new ArrayList<Opcode>();
+        this.executions = new ArrayList<Long>();
+
+        this.blockStarts = new ArrayList<Integer>();
+        this.blockLabels = new ArrayList<Long>();
+        this.blockExecutions = new ArrayList<Long>();
+
+        this.branchIndexes = new ArrayList<Integer>();
+        this.taken = new ArrayList<Long>();
+        this.notTaken = new ArrayList<Long>();
+    } // constructor ExecutionProfile
+
+    public String getProgram() {
+        return this.program;
+    } // method getProgram
+
+    // instructions
+
+    public int size() {
+        return this.opcodes.size();
+    } // method size
+
+    public int getLine(int index) {
+        return this.lines.get(index);
+    } // method getLine
+
+    public Opcode getOpcode(int index) {
+        return this.opcodes.get(index);
+    } // method getOpcode
+
+    public long getExecutions(int index) {
+        return this.executions.get(index);
+    } // method getExecutions
+
+    public long getTotal() {
+        long total = 0;
+
+        for (long count : this.executions)
+            total = total + count;
+
+        return total;
+    } // method getTotal
+
+    public Map<Opcode, Long> getOpcodeExecutions() {
+        Map<Opcode, Long> opcodes = new EnumMap<Opcode, Long>(Opcode.class);
+
+        for (int i = 0; i < size(); i++)
+            opcodes.merge(getOpcode(i), getExecutions(i), Long::sum);
+
+        return opcodes;
+    } // method getOpcodeExecutions
+
+    public void addInstruction(int line, Opcode opcode, long executions) {
+        this.lines.add(line);
+        this.opcodes.add(opcode);
+        this.executions.add(executions);
+    } // method addInstruction
+
+    // blocks, in the order of the code
+
+    public int getBlockCount() {
+        return this.blockStarts.size();
+    } // method getBlockCount
+
+    public int getBlockStart(int block) {
+        return this.blockStarts.get(block);
+    } // method getBlockStart
+
+    // index after the last instruction of the block
+
+    public int getBlockEnd(int block) {
+        return block + 1 < getBlockCount() ? getBlockStart(block + 1) : size();
+    } // method getBlockEnd
+
+    // number of the label of the block, -1 if it is not known
+
+    public long getBlockLabel(int block) {
+        return this.blockLabels.get(block);
+    } // method getBlockLabel
+
+    public long getBlockExecutions(int block) {
+        return this.blockExecutions.get(block);
+    } // method getBlockExecutions
+
+    // instructions executed in the block, an error in the middle of a block leaves the rest
+    // of it one execution behind
+
+    public long getBlockInstructions(int block) {
+        long total = 0;
+
+        for (int i = getBlockStart(block); i < getBlockEnd(block); i++)
+            total = total + getExecutions(i);
+
+        return total;
+    } // method getBlockInstructions
+
+    public void addBlock(int start, long label, long executions) {
+        this.blockStarts.add(start);
+        this.blockLabels.add(label);
+        this.blockExecutions.add(executions);
+    } // method addBlock
+
+    // conditional jumps
+
+    public int getBranchCount() {
+        return this.branchIndexes.size();
+    } // method getBranchCount
+
+    public int getBranchIndex(int branch) {
+        return this.branchIndexes.get(branch);
+    } // method getBranchIndex
+
+    public long getTaken(int branch) {
+        return this.taken.get(branch);
+    } // method getTaken
+
+    public long getNotTaken(int branch) {
+        return this.notTaken.get(branch);
+    } // method getNotTaken
+
+    public void addBranch(int index, long taken, long notTaken) {
+        this.branchIndexes.add(index);
+        this.taken.add(taken);
+        this.notTaken.add(notTaken);
+    } // method addBranch
+
+    // the file of the profile
+
+    public void write(Writer output) throws Exception {
+        Writer profile = output instanceof BufferedWriter || output instanceof StringWriter ? output : new BufferedWriter(output);
+
+        profile.write(".profile " + this.program + "\n");
+
+        for (int i = 0; i < size(); i++)
+            profile.write("instruction " + i + " " + getLine(i) + " " + getOpcode(i).name() + " " + getExecutions(i) + "\n");
+
+        for (int block = 0; block < getBlockCount(); block++)
+            profile.write("block " + getBlockStart(block) + " " + getBlockLabel(block) + " " + getBlockExecutions(block) + "\n");
+
+        for (int branch = 0; branch < getBranchCount(); branch++)
+            profile.write("branch " + getBranchIndex(branch) + " " + getTaken(branch) + " " + getNotTaken(branch) + "\n");
+
+        profile.flush();
+    } // method write
+
+    // the profile is written to a temporary file next to the file and moved over it at once, so
+    // runs of the same program that end together never leave a mixed or a cut profile
+
+    public void write(String fileName) throws Exception {
+        Path file = Paths.get(fileName).toAbsolutePath();
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+        try {
+            try (Writer output = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                write(output);
+            }
+
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    } // method write
+
+    public static ExecutionProfile load(String fileName) throws Exception {
+        try (Reader input = Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            return parse(input);
+        }
+    } // method load
+
+    public static ExecutionProfile parse(Reader input) throws Exception {
+        BufferedReader reader = new BufferedReader(input);
+        String text = reader.readLine();
+
+        if (text == null || !text.startsWith(".profile "))
+            throw new Exception("\nError: the file is not a profile");
+
+        ExecutionProfile profile = new ExecutionProfile(text.substring(".profile ".length()));
+        int line = 1;
+
+        while ((text = reader.readLine()) != null) {
+            String[] fields = text.trim().split("\\s+");
+
+            line++;
+
+            try {
+                if (fields[0].equals("instruction") && fields.length == 5 && Integer.parseInt(fields[1]) == profile.size())
+                    profile.addInstruction(Integer.parseInt(fields[2]), Opcode.valueOf(fields[3]), Long.parseLong(fields[4]));
+                else if (fields[0].equals("block") && fields.length == 4)
+                    profile.addBlock(Integer.parseInt(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+                else if (fields[0].equals("branch") && fields.length == 4)
+                    profile.addBranch(Integer.parseInt(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+                else if (!text.isBlank())
+                    throw new IllegalArgumentException();
+            } catch (IllegalArgumentException e) {
+                throw new Exception("\nError at line " + line + " of the profile: '" + text + "' is not a record of a profile");
+            }
+        }
+
+        for (int block = 0; block < profile.getBlockCount(); block++)
+            if (profile.getBlockStart(block) < (block > 0 ? profile.getBlockStart(block - 1) + 1 : 0) || profile.getBlockStart(block) >= profile.size())
+                throw new Exception("\nError: block " + block + " of the profile is not in order or outside the program");
+
+        for (int branch = 0; branch < profile.getBranchCount(); branch++)
+            if (profile.getBranchIndex(branch) < 0 || profile.getBranchIndex(branch) >= profile.size())
+                throw new Exception("\nError: branch " + branch + " of the profile is outside the program");
+
+        return profile;
+    } // method parse
+
+    // the report for a person: the opcodes, the blocks and the branches from the most executed,
+    // and the hottest instructions
+
+    public void writeReport(Writer output) throws Exception {
+        long total = getTotal();
+
+        output.write("Profile of " + this.program + ": " + total + " instructions executed\n");
+
+        output.write(String.format("%n%-24s %14s %7s%n", "opcode", "executions", "%"));
+
+        List<Map.Entry<Opcode, Long>> opcodes = new ArrayList<Map.Entry<Opcode, Long>>(getOpcodeExecutions().entrySet());
+
+        opcodes.sort(Map.Entry.<Opcode, Long>comparingByValue().reversed());
+
+        for (Map.Entry<Opcode, Long> opcode : opcodes)
+            output.write(String.format("%-24s %14d %7.2f%n", opcode.getKey().name(), opcode.getValue(), percent(opcode.getValue(), total)));
+
+        output.write(String.format("%n%-24s %14s %14s %7s%n", "block", "executions", "instructions", "%"));
+
+        for (int block : sorted(getBlockCount(), this::getBlockInstructions)) {
+            String name = getBlockLabel(block) >= 0 ? "label " + getBlockLabel(block) : "at " + getBlockStart(block);
+
+            if (getLine(getBlockStart(block)) > 0)
+                name = name + ", line " + getLine(getBlockStart(block));
+
+            output.write(String.format("%-24s %14d %14d %7.2f%n", name, getBlockExecutions(block), getBlockInstructions(block), percent(getBlockInstructions(block), total)));
+        }
+
+        output.write(String.format("%n%-24s %14s %14s %7s%n", "branch", "taken", "not taken", "taken %"));
+
+        for (int branch : sorted(getBranchCount(), b -> getTaken(b) + getNotTaken(b))) {
+            int index = getBranchIndex(branch);
+            String name = index + " " + getOpcode(index).getMnemonic() + (getLine(index) > 0 ? ", line " + getLine(index) : "");
+
+            output.write(String.format("%-24s %14d %14d %7.2f%n", name, getTaken(branch), getNotTaken(branch), percent(getTaken(branch), getTaken(branch) + getNotTaken(branch))));
+        }
+
+        output.write(String.format("%n%-24s %14s %7s%n", "instruction", "executions", "%"));
+
+        List<Integer> instructions = sorted(size(), this::getExecutions);
+
+        for (int index : instructions.subList(0, Math.min(HOTTEST, instructions.size()))) {
+            String name = index + " " + getOpcode(index).getMnemonic() + (getLine(index) > 0 ? ", line " + getLine(index) : "");
+
+            output.write(String.format("%-24s %14d %7.2f%n", name, getExecutions(index), percent(getExecutions(index), total)));
+        }
+
+        output.flush();
+    } // method writeReport
+
+    // numbers from 0 to the count, from the largest key to the smallest
+
+    private static List<Integer> sorted(int count, IntToLongFunction key) {
+        List<Integer> numbers = new ArrayList<Integer>();
+
+        for (int i = 0; i < count; i++)
+            numbers.add(i);
+
+        numbers.sort(Comparator.comparingLong((Integer i) -> key.applyAsLong(i)).reversed());
+
+        return numbers;
+    } // method sorted
+
+    private static double percent(long part, long total) {
+        return total == 0 ? 0 : 100.0 * part / total;
+    } // method percent
+
+} // class ExecutionProfile
\ No newline at end of file
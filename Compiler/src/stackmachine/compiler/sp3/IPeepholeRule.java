@@ -0,0 +1,24 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+public interface IPeepholeRule {
+
+    String getName();
+
+    // called before every pass of the optimizer over the code
+
+    void prepare(StackMachineCode code);
+
+    // rewrites the instructions of code starting at index into optimized, returns the number
+    // of instructions of code that were consumed or 0 if the rule does not apply at index
+
+    int apply(StackMachineCode code, int index, StackMachineCode optimized);
+
+    // the rule for one optimization, so optimizations can run at the same time: a new rule when
+    // it keeps the state of the code it prepared, the rule itself when it keeps nothing
+
+    IPeepholeRule copy();
+
+} // interface IPeepholeRule
\ No newline at end of file
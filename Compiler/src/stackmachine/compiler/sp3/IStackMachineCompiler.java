@@ -3,8 +3,16 @@
 
 package stackmachine.compiler.sp3;
 
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
 public interface IStackMachineCompiler {
 
     void compile(String program, String fileName) throws Exception;
 
+    void compileBinary(String program, String fileName) throws Exception;
+
+    List<CompilationResult> compileAll(Collection<Path> programs, Path outputDirectory) throws Exception;
+
 } // interface IStackMachineCompiler
@@ -3,8 +3,17 @@
 
 package stackmachine.compiler.sp3;
 
+import java.io.OutputStream;
+import java.io.Writer;
+
 public interface ISyntaxAnalyzer {
 
     String compile() throws Exception;
 
+    void compile(Writer output) throws Exception;
+
+    void compile(OutputStream output) throws Exception;
+
+    StackMachineCode compileCode() throws Exception;
+
 } // interface ISyntaxAnalyzer
\ No newline at end of file
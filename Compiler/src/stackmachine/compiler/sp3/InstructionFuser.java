@@ -0,0 +1,142 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+/*
+ * Replaces the most frequent sequences of instructions with superinstructions, so the stack
+ * machine dispatches fewer instructions in every iteration of a loop
+ *
+ * push a, index, +, load           ->  index, loadelem a
+ * push a, index, +, value, store   ->  index, value, storeelem a
+ * loadvar x, push c, +, storevar x ->  incvar x c           x is an int variable
+ * push c, storevar x               ->  storeconst x c       c is an int constant
+ * <, gofalse label n               ->  gofalse< label n     and for every relational operator
+ *
+ * The sequences were chosen by counting the instructions executed by the sample programs:
+ * the increment of the loop variable, the test of the loop and the access to the elements
+ * of arrays. The variables are only fused after they were resolved to slots.
+ */
+public class InstructionFuser {
+
+    public StackMachineCode fuse(StackMachineCode code) {
+
+        // the address of an array element is fused into the load or store that uses it when the
+        // base address and the sum have no other use
+
+        StackAnalysis analysis = new StackAnalysis(code);
+        boolean[] removed = new boolean[code.size()];
+        Opcode[] replaced = new Opcode[code.size()];
+        long[] arrays = new long[code.size()];
+
+        for (int i = 0; i < code.size(); i++) {
+            Opcode opcode = code.getOpcode(i);
+
+            if (opcode == Opcode.LOAD || opcode == Opcode.STORE) {
+                int sum = analysis.getProducer(i, 0);
+
+                if (!isSum(code, sum) || analysis.getConsumers(sum) != 1)
+                    continue;
+
+                int base = analysis.getProducer(sum, 0);
+
+                if (isArray(code, base) && analysis.getConsumers(base) == 1) {
+                    removed[base] = true;
+                    removed[sum] = true;
+                    replaced[i] = opcode == Opcode.LOAD ? Opcode.LOAD_ELEMENT : Opcode.STORE_ELEMENT;
+                    arrays[i] = code.getOperand(base);
+                }
+            }
+        }
+
+        StackMachineCode fused = new StackMachineCode(code);
+
+        for (int i = 0; i < code.size(); i++) {
+            if (removed[i])
+                continue;
+
+            fused.setLine(code.getLine(i));
+
+            if (replaced[i] != null) {
+                fused.add(replaced[i], arrays[i]);
+            } else if (isIncrement(code, i)) {
+                long constant = code.getOperand(i + 1);
+
+                if (code.getOpcode(i + 2).generic() == Opcode.SUBTRACT)
+                    constant = -constant;
+
+                fused.add(Opcode.INCREMENT, code.getOperand(i), constant);
+                i = i + 3;
+            } else if (i + 1 < code.size() && code.getOpcode(i) == Opcode.PUSH_INT && code.getOpcode(i + 1) == Opcode.STORE_VAR) {
+                fused.add(Opcode.STORE_CONST, code.getOperand(i + 1), code.getOperand(i));
+                i = i + 1;
+            } else if (i + 1 < code.size() && code.getOpcode(i + 1) == Opcode.GOFALSE && branch(code.getOpcode(i)) != null) {
+                fused.add(branch(code.getOpcode(i)), code.getOperand(i + 1));
+                i = i + 1;
+            } else {
+                fused.append(code, i);
+            }
+        }
+
+        return fused;
+    } // method fuse
+
+    // loadvar x, push c, + or -, storevar x with an int variable x
+
+    private static boolean isIncrement(StackMachineCode code, int index) {
+        if (index + 3 >= code.size() || code.getOpcode(index) != Opcode.LOAD_VAR)
+            return false;
+
+        Opcode operator = code.getOpcode(index + 2);
+
+        return code.getOpcode(index + 1) == Opcode.PUSH_INT
+                && (operator == Opcode.ADD || operator == Opcode.IADD || operator == Opcode.SUBTRACT || operator == Opcode.ISUBTRACT)
+                && code.getOpcode(index + 3) == Opcode.STORE_VAR
+                && code.getOperand(index + 3) == code.getOperand(index)
+                && "int".equals(code.getType((int) code.getOperand(index)));
+    } // method isIncrement
+
+    private static boolean isSum(StackMachineCode code, int index) {
+        return index != StackAnalysis.UNKNOWN && (code.getOpcode(index) == Opcode.ADD || code.getOpcode(index) == Opcode.IADD);
+    } // method isSum
+
+    private static boolean isArray(StackMachineCode code, int index) {
+        return index != StackAnalysis.UNKNOWN
+                && code.getOpcode(index) == Opcode.PUSH_ADDRESS
+                && code.isArray((int) code.getOperand(index));
+    } // method isArray
+
+    // the jump that fuses a relational operator with the gofalse that follows it, or null
+
+    private static Opcode branch(Opcode operator) {
+        switch (operator) {
+            case LESS_THAN:
+                return Opcode.GOFALSE_LESS_THAN;
+            case LESS_EQUALS:
+                return Opcode.GOFALSE_LESS_EQUALS;
+            case GREATER_THAN:
+                return Opcode.GOFALSE_GREATER_THAN;
+            case GREATER_EQUALS:
+                return Opcode.GOFALSE_GREATER_EQUALS;
+            case EQUALS:
+                return Opcode.GOFALSE_EQUALS;
+            case NOT_EQUALS:
+                return Opcode.GOFALSE_NOT_EQUALS;
+            case ILESS_THAN:
+                return Opcode.IGOFALSE_LESS_THAN;
+            case ILESS_EQUALS:
+                return Opcode.IGOFALSE_LESS_EQUALS;
+            case IGREATER_THAN:
+                return Opcode.IGOFALSE_GREATER_THAN;
+            case IGREATER_EQUALS:
+                return Opcode.IGOFALSE_GREATER_EQUALS;
+            case IEQUALS:
+                return Opcode.IGOFALSE_EQUALS;
+            case INOT_EQUALS:
+                return Opcode.IGOFALSE_NOT_EQUALS;
+            default:
+                return null;
+        }
+    } // method branch
+
+} // class InstructionFuser
\ No newline at end of file
@@ -0,0 +1,79 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * A jump to a label that is followed by goto label M jumps straight to label M
+ */
+public class JumpChainRule implements IPeepholeRule {
+    private StackMachineCode code;
+    private Map<Long, Integer> labels;
+
+    @Override
+    public String getName() {
+        return "jump chain";
+    } // method getName
+
+    @Override
+    public IPeepholeRule copy() {
+        return new JumpChainRule();
+    } // method copy
+
+    @Override
+    public void prepare(StackMachineCode code) {
+        this.code = code;
+        this.labels = new HashMap<Long, Integer>();
+
+        for (int i = 0; i < code.size(); i++)
+            if (code.getOpcode(i) == Opcode.LABEL)
+                this.labels.put(code.getOperand(i), i);
+    } // method prepare
+
+    @Override
+    public int apply(StackMachineCode code, int index, StackMachineCode optimized) {
+        Opcode opcode = code.getOpcode(index);
+
+        if (opcode != Opcode.GOTO && opcode != Opcode.GOFALSE)
+            return 0;
+
+        long label = code.getOperand(index);
+        long target = target(label);
+
+        if (target == label)
+            return 0;
+
+        optimized.add(opcode, target);
+
+        return 1;
+    } // method apply
+
+    private long target(long label) {
+        long target = label;
+
+        // the number of hops is bounded so that a loop made only of gotos ends
+
+        for (int hops = 0; hops < this.labels.size(); hops++) {
+            Integer position = this.labels.get(target);
+
+            if (position == null)
+                break;
+
+            int next = position;
+
+            while (next < this.code.size() && this.code.getOpcode(next) == Opcode.LABEL)
+                next++;
+
+            if (next == this.code.size() || this.code.getOpcode(next) != Opcode.GOTO || this.code.getOperand(next) == target)
+                break;
+
+            target = this.code.getOperand(next);
+        }
+
+        return target;
+    } // method target
+
+} // class JumpChainRule
\ No newline at end of file
@@ -0,0 +1,41 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+/*
+ * goto label N, label N:  ->  label N:
+ *
+ * Other labels may stand between the goto and its label, as in the code of an empty else
+ */
+public class JumpToNextRule implements IPeepholeRule {
+
+    @Override
+    public String getName() {
+        return "jump to next";
+    } // method getName
+
+    // the rule keeps nothing, so one rule serves every optimization
+
+    @Override
+    public IPeepholeRule copy() {
+        return this;
+    } // method copy
+
+    @Override
+    public void prepare(StackMachineCode code) {
+    } // method prepare
+
+    @Override
+    public int apply(StackMachineCode code, int index, StackMachineCode optimized) {
+        if (code.getOpcode(index) != Opcode.GOTO)
+            return 0;
+
+        for (int next = index + 1; next < code.size() && code.getOpcode(next) == Opcode.LABEL; next++)
+            if (code.getOperand(next) == code.getOperand(index))
+                return 1;
+
+        return 0;
+    } // method apply
+
+} // class JumpToNextRule
\ No newline at end of file
@@ -0,0 +1,76 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Assembler stage that removes the labels and rewrites every jump to the index of the
+ * instruction it jumps to
+ *
+ * label 0:, ..., goto label 0  ->  ..., goto 4
+ *
+ * It must be the last pass over the code, the other passes work with labels.
+ */
+public class LabelResolver {
+    private boolean labelTable;
+
+    public LabelResolver() {
+        this(false);
+    } // constructor LabelResolver
+
+    // with a label table the resolved code keeps, for debugging, the index of every label
+
+    public LabelResolver(boolean labelTable) {
+        this.labelTable = labelTable;
+    } // constructor LabelResolver
+
+    public StackMachineCode resolve(StackMachineCode code) throws Exception {
+        Map<Long, Integer> offsets = new HashMap<Long, Integer>();
+        int offset = 0;
+
+        for (int i = 0; i < code.size(); i++) {
+            if (code.getOpcode(i) == Opcode.LABEL)
+                offsets.put(code.getOperand(i), offset);
+            else
+                offset++;
+        }
+
+        StackMachineCode resolved = new StackMachineCode(code);
+
+        for (int i = 0; i < code.size(); i++) {
+            Opcode opcode = code.getOpcode(i);
+
+            if (opcode == Opcode.LABEL)
+                continue;
+
+            resolved.setLine(code.getLine(i));
+
+            if (opcode.getOperand() == Opcode.Operand.LABEL) {
+                Integer target = offsets.get(code.getOperand(i));
+
+                if (target == null)
+                    throw new Exception("\nError: label " + code.getOperand(i) + " is not defined");
+
+                resolved.add(opcode, target);
+            } else {
+                resolved.append(code, i);
+            }
+        }
+
+        Map<Long, Integer> table = new LinkedHashMap<Long, Integer>();
+
+        if (this.labelTable)
+            for (int i = 0; i < code.size(); i++)
+                if (code.getOpcode(i) == Opcode.LABEL)
+                    table.put(code.getOperand(i), offsets.get(code.getOperand(i)));
+
+        resolved.setLabelTable(table);
+
+        return resolved;
+    } // method resolve
+
+} // class LabelResolver
\ No newline at end of file
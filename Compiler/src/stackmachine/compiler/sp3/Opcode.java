@@ -0,0 +1,217 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Instructions of the stack machine
+ *
+ * The order of the constants is the opcode written in the binary format, so new
+ * instructions must be added at the end
+ */
+public enum Opcode {
+    PUSH_INT("push", Operand.INT, 0, 1),
+    PUSH_FLOAT("push", Operand.FLOAT, 0, 1),
+    PUSH_ADDRESS("push", Operand.SYMBOL, 0, 1),
+    LOAD("load", Operand.NONE, 1, 1),
+    STORE("store", Operand.NONE, 2, 0),
+    ADD("+", Operand.NONE, 2, 1),
+    SUBTRACT("-", Operand.NONE, 2, 1),
+    MULTIPLY("*", Operand.NONE, 2, 1),
+    DIVIDE("/", Operand.NONE, 2, 1),
+    REMAINDER("%", Operand.NONE, 2, 1),
+    LESS_THAN("<", Operand.NONE, 2, 1),
+    LESS_EQUALS("<=", Operand.NONE, 2, 1),
+    GREATER_THAN(">", Operand.NONE, 2, 1),
+    GREATER_EQUALS(">=", Operand.NONE, 2, 1),
+    EQUALS("==", Operand.NONE, 2, 1),
+    NOT_EQUALS("!=", Operand.NONE, 2, 1),
+    AND("&&", Operand.NONE, 2, 1),
+    OR("||", Operand.NONE, 2, 1),
+    NOT("!", Operand.NONE, 1, 1),
+    PRINT("print", Operand.NONE, 1, 0),
+    LABEL("label", Operand.LABEL, 0, 0),
+    GOTO("goto", Operand.LABEL, 0, 0),
+    GOFALSE("gofalse", Operand.LABEL, 1, 0),
+    ARRAY("array", Operand.SYMBOL, 0, 0),
+    HALT("halt", Operand.NONE, 0, 0),
+
+    // access to a variable through its slot in memory
+
+    LOAD_VAR("loadvar", Operand.SYMBOL, 0, 1),
+    STORE_VAR("storevar", Operand.SYMBOL, 1, 0),
+
+    // operators specialized for int and float operands
+
+    IADD("iadd", Operand.NONE, 2, 1),
+    FADD("fadd", Operand.NONE, 2, 1),
+    ISUBTRACT("isub", Operand.NONE, 2, 1),
+    FSUBTRACT("fsub", Operand.NONE, 2, 1),
+    IMULTIPLY("imul", Operand.NONE, 2, 1),
+    FMULTIPLY("fmul", Operand.NONE, 2, 1),
+    IDIVIDE("idiv", Operand.NONE, 2, 1),
+    FDIVIDE("fdiv", Operand.NONE, 2, 1),
+    IREMAINDER("irem", Operand.NONE, 2, 1),
+    FREMAINDER("frem", Operand.NONE, 2, 1),
+    ILESS_THAN("ilt", Operand.NONE, 2, 1),
+    FLESS_THAN("flt", Operand.NONE, 2, 1),
+    ILESS_EQUALS("ile", Operand.NONE, 2, 1),
+    FLESS_EQUALS("fle", Operand.NONE, 2, 1),
+    IGREATER_THAN("igt", Operand.NONE, 2, 1),
+    FGREATER_THAN("fgt", Operand.NONE, 2, 1),
+    IGREATER_EQUALS("ige", Operand.NONE, 2, 1),
+    FGREATER_EQUALS("fge", Operand.NONE, 2, 1),
+    IEQUALS("ieq", Operand.NONE, 2, 1),
+    FEQUALS("feq", Operand.NONE, 2, 1),
+    INOT_EQUALS("ine", Operand.NONE, 2, 1),
+    FNOT_EQUALS("fne", Operand.NONE, 2, 1),
+    INT_TO_FLOAT("i2f", Operand.NONE, 1, 1),
+
+    // superinstructions that replace the most frequent sequences of instructions
+    //
+    // loadelem a       push a, index, +, load
+    // storeelem a      push a, index, +, value, store
+    // storeconst x c   push c, storevar x
+    // incvar x c       loadvar x, push c, +, storevar x
+    // gofalse< label   <, gofalse label          and the same for every relational operator
+
+    LOAD_ELEMENT("loadelem", Operand.SYMBOL, 1, 1),
+    STORE_ELEMENT("storeelem", Operand.SYMBOL, 2, 0),
+    STORE_CONST("storeconst", Operand.SYMBOL_INT, 0, 0),
+    INCREMENT("incvar", Operand.SYMBOL_INT, 0, 0),
+    GOFALSE_LESS_THAN("gofalse<", Operand.LABEL, 2, 0),
+    GOFALSE_LESS_EQUALS("gofalse<=", Operand.LABEL, 2, 0),
+    GOFALSE_GREATER_THAN("gofalse>", Operand.LABEL, 2, 0),
+    GOFALSE_GREATER_EQUALS("gofalse>=", Operand.LABEL, 2, 0),
+    GOFALSE_EQUALS("gofalse==", Operand.LABEL, 2, 0),
+    GOFALSE_NOT_EQUALS("gofalse!=", Operand.LABEL, 2, 0),
+    IGOFALSE_LESS_THAN("igofalse<", Operand.LABEL, 2, 0),
+    IGOFALSE_LESS_EQUALS("igofalse<=", Operand.LABEL, 2, 0),
+    IGOFALSE_GREATER_THAN("igofalse>", Operand.LABEL, 2, 0),
+    IGOFALSE_GREATER_EQUALS("igofalse>=", Operand.LABEL, 2, 0),
+    IGOFALSE_EQUALS("igofalse==", Operand.LABEL, 2, 0),
+    IGOFALSE_NOT_EQUALS("igofalse!=", Operand.LABEL, 2, 0);
+
+    // kind of the operand of an instruction, SYMBOL_INT is a symbol and an int constant
+
+    public enum Operand { NONE, INT, FLOAT, SYMBOL, LABEL, SYMBOL_INT }
+
+    private static final Opcode[] OPCODES = values();
+    private static final Map<String, Opcode> MNEMONICS = new HashMap<String, Opcode>();
+
+    // the mnemonics by their hash code, for the lookup of a mnemonic in the bytes of a text
+
+    private static final Opcode[] HASHED = new Opcode[256];
+
+    // generic operators in the order of their specialized versions
+
+    private static final List<Opcode> SPECIALIZED = Arrays.asList(
+            ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER,
+            LESS_THAN, LESS_EQUALS, GREATER_THAN, GREATER_EQUALS, EQUALS, NOT_EQUALS);
+
+    static {
+        for (Opcode opcode : OPCODES)
+            if (!opcode.mnemonic.equals("push"))
+                MNEMONICS.put(opcode.mnemonic, opcode);
+
+        for (Opcode opcode : MNEMONICS.values()) {
+            int slot = opcode.mnemonic.hashCode() & (HASHED.length - 1);
+
+            while (HASHED[slot] != null)
+                slot = (slot + 1) & (HASHED.length - 1);
+
+            HASHED[slot] = opcode;
+        }
+    }
+
+    private final String mnemonic;
+    private final Operand operand;
+    private final int pops;
+    private final int pushes;
+
+    Opcode(String mnemonic, Operand operand, int pops, int pushes) {
+        this.mnemonic = mnemonic;
+        this.operand = operand;
+        this.pops = pops;
+        this.pushes = pushes;
+    } // constructor Opcode
+
+    public String getMnemonic() {
+        return this.mnemonic;
+    } // method getMnemonic
+
+    public Operand getOperand() {
+        return this.operand;
+    } // method getOperand
+
+    // number of values the instruction takes from the stack
+
+    public int getPops() {
+        return this.pops;
+    } // method getPops
+
+    // number of values the instruction leaves on the stack
+
+    public int getPushes() {
+        return this.pushes;
+    } // method getPushes
+
+    // the operator specialized for int or float operands
+
+    public Opcode specialize(boolean real) {
+        int index = SPECIALIZED.indexOf(this);
+
+        return index < 0 ? this : OPCODES[IADD.ordinal() + index * 2 + (real ? 1 : 0)];
+    } // method specialize
+
+    // the generic operator of an operator specialized for int or float operands
+
+    public Opcode generic() {
+        if (this.ordinal() < IADD.ordinal() || this.ordinal() > FNOT_EQUALS.ordinal())
+            return this;
+
+        return SPECIALIZED.get((this.ordinal() - IADD.ordinal()) / 2);
+    } // method generic
+
+    public static Opcode valueOf(int code) {
+        return OPCODES[code];
+    } // method valueOf
+
+    public static Opcode fromMnemonic(String mnemonic) {
+        return MNEMONICS.get(mnemonic);
+    } // method fromMnemonic
+
+    // the mnemonic in the bytes from start to end, the mnemonics are ASCII so the hash code of
+    // the bytes is the hash code of the string
+
+    public static Opcode fromMnemonic(ByteBuffer text, int start, int end) {
+        int hash = 0;
+
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + text.get(i);
+
+        for (int slot = hash & (HASHED.length - 1); HASHED[slot] != null; slot = (slot + 1) & (HASHED.length - 1))
+            if (HASHED[slot].is(text, start, end))
+                return HASHED[slot];
+
+        return null;
+    } // method fromMnemonic
+
+    private boolean is(ByteBuffer text, int start, int end) {
+        if (end - start != this.mnemonic.length())
+            return false;
+
+        for (int i = 0; i < this.mnemonic.length(); i++)
+            if (text.get(start + i) != this.mnemonic.charAt(i))
+                return false;
+
+        return true;
+    } // method is
+
+} // enum Opcode
\ No newline at end of file
@@ -0,0 +1,166 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import slu.compiler.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Throughput of the parser in tokens per second
+ *
+ * The program is read once by the lexical analyzer and its tokens are replayed to the parser
+ * in every run, so the time is the time of the parser and of the code it emits. The program
+ * is the file given as argument, or a generated program with declarations, assignments,
+ * arrays, if, while and do statements.
+ */
+public class ParserBenchmark {
+    private static final int WARMUP = 50;
+    private static final int RUNS = 200;
+
+    public static void main(String[] args) {
+
+        try {
+
+            Path program;
+
+            if (args.length > 0) {
+                program = Path.of(args[0]);
+            } else {
+                program = Files.createTempFile("benchmark", ".txt");
+                program.toFile().deleteOnExit();
+
+                Files.write(program, generate(400).getBytes(StandardCharsets.UTF_8));
+            }
+
+            // the token kinds of the parser must cover the lexicon of the lexical analyzer
+
+            if (Files.exists(Path.of("lexicon.txt")))
+                System.out.printf("lexicon.txt: %d tokens%n", TokenKind.readLexicon(Path.of("lexicon.txt")).size());
+
+            Tokens tokens = new Tokens(new LexicalAnalyzer(program.toString(), StandardCharsets.UTF_8));
+
+            for (int i = 0; i < WARMUP; i++)
+                parse(tokens);
+
+            long best = Long.MAX_VALUE;
+            long total = 0;
+
+            for (int i = 0; i < RUNS; i++) {
+                long time = parse(tokens);
+
+                best = Math.min(best, time);
+                total = total + time;
+            }
+
+            System.out.printf("%d tokens, %d runs%n", tokens.size(), RUNS);
+            System.out.printf("best    %10.0f tokens/s%n", tokens.size() * 1e9 / best);
+            System.out.printf("average %10.0f tokens/s%n", tokens.size() * 1e9 * RUNS / total);
+
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        }
+    } // method main
+
+    private static long parse(Tokens tokens) throws Exception {
+        tokens.rewind();
+
+        long start = System.nanoTime();
+
+        new SyntaxAnalyzer(tokens).compileCode();
+
+        return System.nanoTime() - start;
+    } // method parse
+
+    // a program with the given number of blocks of statements
+
+    private static String generate(int blocks) {
+        StringBuilder program = new StringBuilder();
+
+        program.append("void main {\n");
+        program.append("  int i, j, n = 10, sum = 0;\n");
+        program.append("  float x = 0.5, y;\n");
+        program.append("  boolean found = false;\n");
+        program.append("  int data[100];\n");
+
+        for (int b = 0; b < blocks; b++) {
+            program.append("  i = 0;\n");
+            program.append("  while (i < n && !found) {\n");
+            program.append("    data[i] = i * 2 + ").append(b).append(" % 7;\n");
+            program.append("    sum = sum + data[i] - (i - 1) * 3;\n");
+            program.append("    if (sum >= 100 || i == ").append(b % 10).append(") found = true; else y = x * 2.5 + i;\n");
+            program.append("    i = i + 1;\n");
+            program.append("  }\n");
+            program.append("  do { j = j + data[j % 10]; } while (j <= sum);\n");
+            program.append("  print(sum);\n");
+        }
+
+        program.append("}\n");
+
+        return program.toString();
+    } // method generate
+
+    // the tokens of a program, read once and replayed to the parser
+
+    private static class Tokens implements ILexicalAnalyzer {
+        private final ILexicalAnalyzer scanner;
+        private final List<IToken> tokens;
+        private final List<Integer> lines;
+        private int next;
+
+        Tokens(ILexicalAnalyzer scanner) {
+            this.scanner = scanner;
+            this.tokens = new ArrayList<IToken>();
+            this.lines = new ArrayList<Integer>();
+
+            // the lexical analyzer returns the end of the program after the closing bracket of main
+
+            int depth = 0;
+
+            do {
+                IToken token = scanner.getToken();
+
+                this.tokens.add(token);
+                this.lines.add(scanner.getLine());
+
+                if (token.getName().equals("open_curly_bracket"))
+                    depth++;
+                else if (token.getName().equals("closed_curly_bracket"))
+                    depth--;
+            } while (depth > 0 || this.tokens.size() < 3);
+
+            this.tokens.add(scanner.getToken());
+            this.lines.add(scanner.getLine());
+        } // constructor Tokens
+
+        int size() {
+            return this.tokens.size();
+        } // method size
+
+        void rewind() {
+            this.next = 0;
+        } // method rewind
+
+        @Override
+        public IToken getToken() {
+            return this.tokens.get(Math.min(this.next++, this.tokens.size() - 1));
+        } // method getToken
+
+        @Override
+        public int getLine() {
+            return this.lines.get(Math.max(0, Math.min(this.next - 1, this.lines.size() - 1)));
+        } // method getLine
+
+        @Override
+        public String getLexeme(String name) {
+            return this.scanner.getLexeme(name);
+        } // method getLexeme
+
+    } // class Tokens
+
+} // class ParserBenchmark
\ No newline at end of file
@@ -0,0 +1,160 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Peephole optimizer of stack machine code
+ *
+ * Every pass walks the code once and, at each instruction, applies the first rule that
+ * matches. The passes are repeated until no rule applies any more.
+ *
+ * Every optimization works with its own copies of the rules, which keep the state of the code
+ * they prepared, and counts its statistics apart, adding them to those of the optimizer at the
+ * end. An optimizer shared by compilations running at the same time optimizes them all at once.
+ */
+public class PeepholeOptimizer {
+    private List<IPeepholeRule> rules;
+    private Map<String, Integer> removed;
+    private Map<String, Integer> applied;
+    private int passes;
+
+    public PeepholeOptimizer() {
+        this(defaultRules());
+    } // constructor PeepholeOptimizer
+
+    public PeepholeOptimizer(List<IPeepholeRule> rules) {
+        this.rules = new ArrayList<IPeepholeRule>(rules);
+        this.removed = new LinkedHashMap<String, Integer>();
+        this.applied = new LinkedHashMap<String, Integer>();
+
+        for (IPeepholeRule rule : this.rules) {
+            this.removed.put(rule.getName(), 0);
+            this.applied.put(rule.getName(), 0);
+        }
+    } // constructor PeepholeOptimizer
+
+    public static List<IPeepholeRule> defaultRules() {
+        return Arrays.asList(
+                new ConstantConditionRule(),
+                new UnreachableCodeRule(),
+                new JumpChainRule(),
+                new JumpToNextRule(),
+                new UnusedLabelRule());
+    } // method defaultRules
+
+    public synchronized void addRule(IPeepholeRule rule) {
+        this.rules.add(rule);
+        this.removed.put(rule.getName(), 0);
+        this.applied.put(rule.getName(), 0);
+    } // method addRule
+
+    public synchronized List<String> getRuleNames() {
+        List<String> names = new ArrayList<String>();
+
+        for (IPeepholeRule rule : this.rules)
+            names.add(rule.getName());
+
+        return names;
+    } // method getRuleNames
+
+    public StackMachineCode optimize(StackMachineCode code) {
+        List<IPeepholeRule> rules = new ArrayList<IPeepholeRule>();
+
+        synchronized (this) {
+            for (IPeepholeRule rule : this.rules)
+                rules.add(rule.copy());
+        }
+
+        int[] removed = new int[rules.size()];
+        int[] applied = new int[rules.size()];
+        int passes = 0;
+        boolean changed = true;
+
+        while (changed) {
+            changed = false;
+
+            for (IPeepholeRule rule : rules)
+                rule.prepare(code);
+
+            StackMachineCode optimized = new StackMachineCode(code);
+
+            int index = 0;
+
+            while (index < code.size()) {
+                int consumed = 0;
+
+                optimized.setLine(code.getLine(index));
+
+                for (int rule = 0; rule < rules.size(); rule++) {
+                    int size = optimized.size();
+
+                    consumed = rules.get(rule).apply(code, index, optimized);
+
+                    if (consumed > 0) {
+                        removed[rule] = removed[rule] + consumed - (optimized.size() - size);
+                        applied[rule]++;
+                        break;
+                    }
+                }
+
+                if (consumed > 0) {
+                    changed = true;
+                    index = index + consumed;
+                } else {
+                    optimized.append(code, index);
+                    index++;
+                }
+            }
+
+            code = optimized;
+            passes++;
+        }
+
+        synchronized (this) {
+            for (int rule = 0; rule < rules.size(); rule++) {
+                this.removed.merge(rules.get(rule).getName(), removed[rule], Integer::sum);
+                this.applied.merge(rules.get(rule).getName(), applied[rule], Integer::sum);
+            }
+
+            this.passes = this.passes + passes;
+        }
+
+        return code;
+    } // method optimize
+
+    // number of instructions removed by every rule
+
+    public synchronized Map<String, Integer> getStatistics() {
+        return new LinkedHashMap<String, Integer>(this.removed);
+    } // method getStatistics
+
+    // number of times every rule was applied
+
+    public synchronized Map<String, Integer> getApplications() {
+        return new LinkedHashMap<String, Integer>(this.applied);
+    } // method getApplications
+
+    public synchronized int getPasses() {
+        return this.passes;
+    } // method getPasses
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder();
+
+        report.append("peephole optimizer: ").append(this.passes).append(" passes\n");
+
+        for (Map.Entry<String, Integer> rule : this.removed.entrySet())
+            report.append(String.format("%-20s applied %6d removed %6d%n", rule.getKey(), this.applied.get(rule.getKey()), rule.getValue()));
+
+        return report.toString();
+    } // method toString
+
+} // class PeepholeOptimizer
\ No newline at end of file
@@ -3,7 +3,9 @@
 
 package stackmachine.compiler.sp3;
 
-import slu.stackmachine.*;
+import slu.stackmachine.IStackMachine;
+import stackmachine.machine.StackMachine;
+
 public class SM_TestProgram {
 
     public static void main(String[] args) {
@@ -0,0 +1,102 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+/*
+ * Assigns every variable a slot and every array a base address in a flat memory, and
+ * replaces the access to variables by name with loads and stores by slot
+ *
+ * push x, load                 ->  loadvar x
+ * push x, expression, store    ->  expression, storevar x
+ *
+ * The variables take the first slots and the arrays follow them, so the array declarations
+ * are no longer needed in the code.
+ */
+public class SlotAllocator {
+
+    public StackMachineCode allocate(StackMachineCode code) {
+        int[] addresses = addresses(code);
+        int memorySize = memorySize(code);
+
+        // the push of the address of a variable is removed when its only use is a load or a store
+
+        StackAnalysis analysis = new StackAnalysis(code);
+        boolean[] removed = new boolean[code.size()];
+        Opcode[] replaced = new Opcode[code.size()];
+
+        for (int i = 0; i < code.size(); i++) {
+            Opcode opcode = code.getOpcode(i);
+
+            if (opcode == Opcode.LOAD || opcode == Opcode.STORE) {
+                int producer = analysis.getProducer(i, 0);
+
+                if (isVariable(code, producer) && analysis.getConsumers(producer) == 1) {
+                    removed[producer] = true;
+                    replaced[i] = opcode == Opcode.LOAD ? Opcode.LOAD_VAR : Opcode.STORE_VAR;
+                }
+            }
+        }
+
+        StackMachineCode allocated = new StackMachineCode(code);
+
+        for (int i = 0; i < code.size(); i++) {
+            if (removed[i] || code.getOpcode(i) == Opcode.ARRAY)
+                continue;
+
+            allocated.setLine(code.getLine(i));
+
+            if (replaced[i] != null)
+                allocated.add(replaced[i], code.getOperand(analysis.getProducer(i, 0)));
+            else
+                allocated.append(code, i);
+        }
+
+        allocated.setLayout(addresses, memorySize);
+
+        return allocated;
+    } // method allocate
+
+    // the memory layout without any change to the instructions, for the code whose labels are
+    // already resolved
+
+    public StackMachineCode layout(StackMachineCode code) {
+        code.setLayout(addresses(code), memorySize(code));
+
+        return code;
+    } // method layout
+
+    private static int[] addresses(StackMachineCode code) {
+        int[] addresses = new int[code.getSymbolCount()];
+        int address = 0;
+
+        for (int symbol = 0; symbol < code.getSymbolCount(); symbol++)
+            if (!code.isArray(symbol))
+                addresses[symbol] = address++;
+
+        for (int symbol = 0; symbol < code.getSymbolCount(); symbol++) {
+            if (code.isArray(symbol)) {
+                addresses[symbol] = address;
+                address = address + code.getArraySize(symbol);
+            }
+        }
+
+        return addresses;
+    } // method addresses
+
+    private static int memorySize(StackMachineCode code) {
+        int memorySize = 0;
+
+        for (int symbol = 0; symbol < code.getSymbolCount(); symbol++)
+            memorySize = memorySize + (code.isArray(symbol) ? code.getArraySize(symbol) : 1);
+
+        return memorySize;
+    } // method memorySize
+
+    private static boolean isVariable(StackMachineCode code, int index) {
+        return index != StackAnalysis.UNKNOWN
+                && code.getOpcode(index) == Opcode.PUSH_ADDRESS
+                && !code.isArray((int) code.getOperand(index));
+    } // method isVariable
+
+} // class SlotAllocator
\ No newline at end of file
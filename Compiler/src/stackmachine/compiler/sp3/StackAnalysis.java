@@ -0,0 +1,162 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Finds, for every value an instruction takes from the stack, the instruction that pushed it
+ *
+ * The code is walked in order. A jump records the stack it leaves for its label, and a label
+ * starts from that stack merged with the stack of the code before it. When two paths reach a
+ * label with values pushed by different instructions, the producer of those values is unknown.
+ * A jump back to a label is only seen after the label, so the walk is repeated until no jump
+ * changes the stack of its label.
+ */
+public class StackAnalysis {
+    public static final int UNKNOWN = -1;
+
+    private int[] first;
+    private int[] producers;
+    private int[] consumers;
+
+    private int[] stack;
+    private int top;
+
+    public StackAnalysis(StackMachineCode code) {
+        Map<Long, int[]> labels = new HashMap<Long, int[]>();
+
+        while (walk(code, labels)) {
+
+            // a jump changed the stack of a label, the code after the label is walked again
+
+        }
+    } // constructor StackAnalysis
+
+    // one walk of the code from the stacks of the labels, true if a jump changed one of them
+
+    private boolean walk(StackMachineCode code, Map<Long, int[]> labels) {
+        this.first = new int[code.size() + 1];
+        this.producers = new int[code.size() * 2 + 1];
+        this.consumers = new int[code.size()];
+        this.stack = new int[16];
+        this.top = 0;
+
+        boolean reachable = true;
+        boolean changed = false;
+        int count = 0;
+
+        for (int i = 0; i < code.size(); i++) {
+            Opcode opcode = code.getOpcode(i);
+
+            if (opcode == Opcode.LABEL) {
+                int[] saved = labels.get(code.getOperand(i));
+
+                if (!reachable)
+                    restore(saved);
+                else if (saved != null)
+                    merge(this.stack, saved, Math.min(saved.length, this.top));
+
+                reachable = true;
+            }
+
+            this.first[i] = count;
+
+            // operand 0 is the deepest value taken by the instruction
+
+            for (int operand = opcode.getPops() - 1; operand >= 0; operand--) {
+                int producer = this.top > 0 ? this.stack[--this.top] : UNKNOWN;
+
+                this.producers[count + operand] = producer;
+
+                if (producer != UNKNOWN)
+                    this.consumers[producer]++;
+            }
+
+            count = count + opcode.getPops();
+
+            for (int value = 0; value < opcode.getPushes(); value++)
+                push(i);
+
+            if (opcode != Opcode.LABEL && opcode.getOperand() == Opcode.Operand.LABEL) {
+                int[] saved = labels.get(code.getOperand(i));
+
+                if (saved == null) {
+                    labels.put(code.getOperand(i), Arrays.copyOf(this.stack, this.top));
+                    changed = true;
+                } else if (saved.length > this.top) {
+
+                    // paths with different depths only keep the values they share
+
+                    labels.put(code.getOperand(i), Arrays.copyOf(saved, this.top));
+                    merge(labels.get(code.getOperand(i)), this.stack, this.top);
+                    changed = true;
+                } else {
+                    changed = merge(saved, this.stack, this.top) || changed;
+                }
+            }
+
+            if (opcode == Opcode.GOTO || opcode == Opcode.HALT)
+                reachable = false;
+        }
+
+        this.first[code.size()] = count;
+
+        return changed;
+    } // method walk
+
+    // instruction that pushed the given operand of the instruction at index, or UNKNOWN
+
+    public int getProducer(int index, int operand) {
+        return this.producers[this.first[index] + operand];
+    } // method getProducer
+
+    // number of instructions that take the value pushed by the instruction at index
+
+    public int getConsumers(int index) {
+        return this.consumers[index];
+    } // method getConsumers
+
+    private void push(int producer) {
+        if (this.top == this.stack.length)
+            this.stack = Arrays.copyOf(this.stack, this.top * 2);
+
+        this.stack[this.top++] = producer;
+    } // method push
+
+    private void restore(int[] saved) {
+        this.top = 0;
+
+        if (saved != null)
+            for (int producer : saved)
+                push(producer);
+    } // method restore
+
+    // true if a value of the stack became unknown
+
+    private boolean merge(int[] stack, int[] other, int size) {
+        boolean changed = false;
+
+        // a value that reaches a label from different producers has no single producer, and
+        // the producers count as used twice so that no pass removes them
+
+        for (int i = 0; i < Math.min(size, stack.length); i++) {
+            if (stack[i] != other[i]) {
+                if (stack[i] != UNKNOWN)
+                    this.consumers[stack[i]] += 2;
+
+                if (other[i] != UNKNOWN)
+                    this.consumers[other[i]] += 2;
+
+                changed = changed || stack[i] != UNKNOWN;
+                stack[i] = UNKNOWN;
+            }
+        }
+
+        return changed;
+    } // method merge
+
+} // class StackAnalysis
\ No newline at end of file
@@ -0,0 +1,731 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import java.io.BufferedWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Intermediate representation of a stack machine program
+ *
+ * Every instruction is an opcode and one operand stored in growable primitive arrays.
+ * The operand is the value of an int constant, the bits of a float constant, the index
+ * of a symbol or the number of a label, depending on the kind of operand of the opcode.
+ * The superinstructions that take a symbol and an int constant keep the constant in a
+ * second array. Every instruction also keeps the line of the program it was compiled from,
+ * or 0 when the line is not known, and the passes keep the line of the instructions they
+ * rewrite.
+ * The text of the program is only produced when the code is written.
+ */
+public class StackMachineCode {
+    private byte[] opcodes;
+    private long[] operands;
+    private long[] constants;
+    private int[] lines;
+    private int size;
+
+    // line of the instructions that are added
+
+    private int line;
+
+    private List<String> names;
+    private List<String> types;
+    private List<Integer> sizes;
+    private Map<String, Integer> symbols;
+
+    private int[] addresses;
+    private int memorySize;
+
+    private Map<Long, Integer> labels;
+
+    public StackMachineCode() {
+        this.opcodes = new byte[64];
+        this.operands = new long[64];
+        this.constants = new long[64];
+        this.lines = new int[64];
+        this.size = 0;
+        this.line = 0;
+
+        this.names = new ArrayList<String>();
+        this.types = new ArrayList<String>();
+        this.sizes = new ArrayList<Integer>();
+        this.symbols = new HashMap<String, Integer>();
+    } // constructor StackMachineCode
+
+    public StackMachineCode(StackMachineCode code) {
+
+        // an empty code that shares the symbol table of the given code, used by the passes
+        // that rewrite the instructions
+
+        this.opcodes = new byte[Math.max(code.size, 64)];
+        this.operands = new long[this.opcodes.length];
+        this.constants = new long[this.opcodes.length];
+        this.lines = new int[this.opcodes.length];
+        this.size = 0;
+        this.line = 0;
+
+        this.names = code.names;
+        this.types = code.types;
+        this.sizes = code.sizes;
+        this.symbols = code.symbols;
+
+        this.addresses = code.addresses;
+        this.memorySize = code.memorySize;
+
+        this.labels = code.labels;
+    } // constructor StackMachineCode
+
+    // instructions
+
+    public int size() {
+        return this.size;
+    } // method size
+
+    public Opcode getOpcode(int index) {
+        return Opcode.valueOf(this.opcodes[index]);
+    } // method getOpcode
+
+    public long getOperand(int index) {
+        return this.operands[index];
+    } // method getOperand
+
+    public double getFloat(int index) {
+        return Double.longBitsToDouble(this.operands[index]);
+    } // method getFloat
+
+    // the int constant of a superinstruction that also takes a symbol
+
+    public long getConstant(int index) {
+        return this.constants[index];
+    } // method getConstant
+
+    // line of the program of the instruction at the index, 0 if it is not known
+
+    public int getLine(int index) {
+        return this.lines[index];
+    } // method getLine
+
+    // the instructions added from now on come from the given line of the program
+
+    public void setLine(int line) {
+        this.line = line;
+    } // method setLine
+
+    public boolean hasLines() {
+        for (int i = 0; i < this.size; i++)
+            if (this.lines[i] != 0)
+                return true;
+
+        return false;
+    } // method hasLines
+
+    public void clearLines() {
+        Arrays.fill(this.lines, 0, this.size, 0);
+    } // method clearLines
+
+    public void add(Opcode opcode) {
+        add(opcode, 0);
+    } // method add
+
+    public void add(Opcode opcode, long operand) {
+        add(opcode, operand, 0);
+    } // method add
+
+    public void add(Opcode opcode, long operand, long constant) {
+        if (this.size == this.opcodes.length) {
+            this.opcodes = Arrays.copyOf(this.opcodes, this.size * 2);
+            this.operands = Arrays.copyOf(this.operands, this.size * 2);
+            this.constants = Arrays.copyOf(this.constants, this.size * 2);
+            this.lines = Arrays.copyOf(this.lines, this.size * 2);
+        }
+
+        this.opcodes[this.size] = (byte) opcode.ordinal();
+        this.operands[this.size] = operand;
+        this.constants[this.size] = constant;
+        this.lines[this.size] = this.line;
+        this.size++;
+    } // method add
+
+    public void append(StackMachineCode code, int index) {
+        add(code.getOpcode(index), code.getOperand(index), code.getConstant(index));
+
+        this.lines[this.size - 1] = code.getLine(index);
+    } // method append
+
+    public void addInt(long value) {
+        add(Opcode.PUSH_INT, value);
+    } // method addInt
+
+    public void addFloat(double value) {
+        add(Opcode.PUSH_FLOAT, Double.doubleToLongBits(value));
+    } // method addFloat
+
+    public void addAddress(String name) {
+        add(Opcode.PUSH_ADDRESS, symbol(name));
+    } // method addAddress
+
+    public void set(int index, Opcode opcode, long operand) {
+        this.opcodes[index] = (byte) opcode.ordinal();
+        this.operands[index] = operand;
+        this.constants[index] = 0;
+    } // method set
+
+    // inserts an instruction before the instruction at the index
+
+    public void insert(int index, Opcode opcode) {
+        add(opcode);
+
+        System.arraycopy(this.opcodes, index, this.opcodes, index + 1, this.size - index - 1);
+        System.arraycopy(this.operands, index, this.operands, index + 1, this.size - index - 1);
+        System.arraycopy(this.constants, index, this.constants, index + 1, this.size - index - 1);
+        System.arraycopy(this.lines, index, this.lines, index + 1, this.size - index - 1);
+
+        this.opcodes[index] = (byte) opcode.ordinal();
+        this.operands[index] = 0;
+        this.constants[index] = 0;
+        this.lines[index] = this.line;
+    } // method insert
+
+    public void truncate(int size) {
+        this.size = size;
+    } // method truncate
+
+    // symbol table
+
+    public int symbol(String name) {
+        Integer index = this.symbols.get(name);
+
+        if (index == null) {
+            index = this.names.size();
+
+            this.names.add(name);
+            this.types.add(null);
+            this.sizes.add(0);
+            this.symbols.put(name, index);
+        }
+
+        return index;
+    } // method symbol
+
+    public void declare(String name, String type) {
+        this.types.set(symbol(name), type);
+    } // method declare
+
+    public void declareArray(String name, String type, int size) {
+        int index = symbol(name);
+
+        this.types.set(index, type);
+        this.sizes.set(index, size);
+    } // method declareArray
+
+    public int getSymbolCount() {
+        return this.names.size();
+    } // method getSymbolCount
+
+    public String getName(int symbol) {
+        return this.names.get(symbol);
+    } // method getName
+
+    public String getType(int symbol) {
+        return this.types.get(symbol);
+    } // method getType
+
+    public int getArraySize(int symbol) {
+        return this.sizes.get(symbol);
+    } // method getArraySize
+
+    public boolean isArray(int symbol) {
+        return this.sizes.get(symbol) > 0;
+    } // method isArray
+
+    // memory layout, the address of every variable and the base address of every array
+
+    public void setLayout(int[] addresses, int memorySize) {
+        this.addresses = addresses;
+        this.memorySize = memorySize;
+    } // method setLayout
+
+    public boolean hasLayout() {
+        return this.addresses != null;
+    } // method hasLayout
+
+    public int getAddress(int symbol) {
+        return this.addresses[symbol];
+    } // method getAddress
+
+    public int getMemorySize() {
+        return this.memorySize;
+    } // method getMemorySize
+
+    // after the labels are resolved the operand of a jump is the index of the instruction it
+    // jumps to, and the label table maps the numbers of the labels to those indexes
+
+    public void setLabelTable(Map<Long, Integer> labels) {
+        this.labels = labels;
+    } // method setLabelTable
+
+    public boolean isResolved() {
+        return this.labels != null;
+    } // method isResolved
+
+    public Map<Long, Integer> getLabelTable() {
+        return this.labels;
+    } // method getLabelTable
+
+    // text of the program
+
+    public void write(Writer output) throws Exception {
+        Writer code = output instanceof BufferedWriter || output instanceof StringWriter ? output : new BufferedWriter(output);
+
+        if (hasLayout()) {
+
+            // the header describes the memory layout
+
+            code.write(".memory " + this.memorySize + "\n");
+
+            for (int i = 0; i < getSymbolCount(); i++) {
+                String type = getType(i) == null ? "unknown" : getType(i);
+
+                if (isArray(i))
+                    code.write(".array " + getName(i) + " " + type + " " + getArraySize(i) + " " + getAddress(i) + "\n");
+                else
+                    code.write(".slot " + getName(i) + " " + type + " " + getAddress(i) + "\n");
+            }
+        }
+
+        if (isResolved())
+            for (Map.Entry<Long, Integer> label : this.labels.entrySet())
+                code.write(".label " + label.getKey() + " " + label.getValue() + "\n");
+
+        // the line table gives the line of the program where every run of instructions from
+        // the same line starts
+
+        if (hasLines())
+            for (int i = 0; i < this.size; i++)
+                if (i == 0 || this.lines[i] != this.lines[i - 1])
+                    code.write(".line " + i + " " + this.lines[i] + "\n");
+
+        for (int i = 0; i < this.size; i++) {
+            Opcode opcode = getOpcode(i);
+            long operand = this.operands[i];
+
+            switch (opcode) {
+                case PUSH_INT:
+                    code.write("push ");
+                    code.write(Long.toString(operand));
+                    break;
+                case PUSH_FLOAT:
+                    code.write("push ");
+                    code.write(Double.toString(getFloat(i)));
+                    break;
+                case PUSH_ADDRESS:
+                    code.write(hasLayout() ? "address " : "push ");
+                    code.write(symbolText((int) operand));
+                    break;
+                case LABEL:
+                    code.write("label ");
+                    code.write(Long.toString(operand));
+                    code.write(':');
+                    break;
+                case ARRAY:
+                    code.write("array ");
+                    code.write(getName((int) operand));
+                    code.write(' ');
+                    code.write(getType((int) operand));
+                    code.write(' ');
+                    code.write(Integer.toString(getArraySize((int) operand)));
+                    break;
+                default:
+                    code.write(opcode.getMnemonic());
+
+                    // loadvar x, storevar x, goto label n, incvar x c, ...
+
+                    if (opcode.getOperand() == Opcode.Operand.SYMBOL || opcode.getOperand() == Opcode.Operand.SYMBOL_INT) {
+                        code.write(' ');
+                        code.write(symbolText((int) operand));
+                    } else if (opcode.getOperand() == Opcode.Operand.LABEL) {
+                        code.write(isResolved() ? " " : " label ");
+                        code.write(Long.toString(operand));
+                    }
+
+                    if (opcode.getOperand() == Opcode.Operand.SYMBOL_INT) {
+                        code.write(' ');
+                        code.write(Long.toString(this.constants[i]));
+                    }
+            }
+
+            code.write('\n');
+        }
+
+        code.flush();
+    } // method write
+
+    private String symbolText(int symbol) {
+        return hasLayout() ? Integer.toString(getAddress(symbol)) : getName(symbol);
+    } // method symbolText
+
+    @Override
+    public String toString() {
+        StringWriter code = new StringWriter();
+
+        try {
+            write(code);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+
+        return code.toString();
+    } // method toString
+
+    public static StackMachineCode parse(Reader input) throws Exception {
+        StringWriter text = new StringWriter();
+
+        input.transferTo(text);
+
+        return parse(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+    } // method parse
+
+    // the text of a program in UTF-8, read in place from the buffer, for example a mapped file
+
+    public static StackMachineCode parse(ByteBuffer input) throws Exception {
+        StackMachineCode code = new StackMachineCode();
+        TextLine line = new TextLine(input);
+
+        Map<Integer, Integer> layout = new HashMap<Integer, Integer>();
+        int memorySize = -1;
+
+        Map<Long, Integer> labels = new LinkedHashMap<Long, Integer>();
+        Map<Integer, Integer> lineTable = new HashMap<Integer, Integer>();
+
+        while (line.next()) {
+            if (line.count() > 0 && line.charAt(0, 0) == '.') {
+                if (line.is(0, ".memory") && line.count() == 2) {
+                    memorySize = line.toInt(1);
+                } else if (line.is(0, ".slot") && line.count() == 4) {
+                    if (line.is(2, "unknown"))
+                        code.symbol(line.text(1));
+                    else
+                        code.declare(line.text(1), line.type(2));
+
+                    layout.put(line.toInt(3), code.symbol(line.text(1)));
+                } else if (line.is(0, ".label") && line.count() == 3) {
+                    labels.put(line.toLong(1, 0), line.toInt(2));
+                    code.setLabelTable(labels);
+                } else if (line.is(0, ".line") && line.count() == 3) {
+                    lineTable.put(line.toInt(1), line.toInt(2));
+                } else if (line.is(0, ".array") && line.count() == 5) {
+                    code.declareArray(line.text(1), line.type(2), line.toInt(3));
+                    layout.put(line.toInt(4), code.symbol(line.text(1)));
+                } else {
+                    throw new Exception("\nError at line " + line.number() + ": invalid directive '" + line + "'");
+                }
+            } else if (line.count() > 0) {
+                code.parseInstruction(line, layout, labels);
+            }
+        }
+
+        int current = 0;
+
+        for (int i = 0; i < code.size; i++) {
+            current = lineTable.getOrDefault(i, current);
+            code.lines[i] = current;
+        }
+
+        if (memorySize >= 0) {
+            int[] addresses = new int[code.getSymbolCount()];
+
+            for (Map.Entry<Integer, Integer> slot : layout.entrySet())
+                addresses[slot.getValue()] = slot.getKey();
+
+            code.setLayout(addresses, memorySize);
+        }
+
+        return code;
+    } // method parse
+
+    private void parseInstruction(TextLine line, Map<Integer, Integer> layout, Map<Long, Integer> labels) throws Exception {
+        Opcode opcode = line.opcode(0);
+        Opcode.Operand operand = opcode == null ? null : opcode.getOperand();
+
+        if (line.is(0, "push") && line.count() == 2) {
+            if (line.isInteger(1, 0))
+                addInt(line.toLong(1, 0));
+            else if (Character.isDigit(line.charAt(1, 0)) || line.charAt(1, 0) == '-')
+                addFloat(Double.parseDouble(line.text(1)));
+            else
+                addAddress(line.text(1));
+
+        } else if (line.is(0, "address") && line.count() == 2
+                || operand == Opcode.Operand.SYMBOL && opcode != Opcode.ARRAY && line.count() == 2
+                || operand == Opcode.Operand.SYMBOL_INT && line.count() == 3) {
+
+            // with a memory layout the variables are given by their address
+
+            int symbol;
+
+            if (line.isInteger(1, 0) && layout.containsKey(line.toInt(1)))
+                symbol = layout.get(line.toInt(1));
+            else if (!line.isInteger(1, 0))
+                symbol = symbol(line.text(1));
+            else
+                throw new Exception("\nError at line " + line.number() + ": no variable at address " + line.text(1));
+
+            if (line.count() == 3 && !line.isInteger(2, 0))
+                throw new Exception("\nError at line " + line.number() + ": invalid constant in '" + line + "'");
+
+            add(line.is(0, "address") ? Opcode.PUSH_ADDRESS : opcode, symbol, line.count() == 3 ? line.toLong(2, 0) : 0);
+
+        } else if (line.is(0, "label") && line.count() == 2 && line.endsWith(1, ':')) {
+
+            add(Opcode.LABEL, parseLabel(line, 1, 1));
+
+        } else if (line.count() == 1 && line.endsWith(0, ':')) {
+
+            // a label without the keyword 'label'
+
+            add(Opcode.LABEL, parseLabel(line, 0, 1));
+
+        } else if (operand == Opcode.Operand.LABEL && line.count() == 3 && line.is(1, "label")) {
+
+            add(opcode, parseLabel(line, 2, 0));
+
+        } else if (operand == Opcode.Operand.LABEL && opcode != Opcode.LABEL && line.count() == 2) {
+
+            // a resolved jump to the index of an instruction
+
+            add(opcode, parseLabel(line, 1, 0));
+            setLabelTable(labels);
+
+        } else if (line.is(0, "array") && line.count() == 4) {
+
+            if (!line.is(2, "int") && !line.is(2, "float") && !line.is(2, "boolean"))
+                throw new Exception("\nError at line " + line.number() + ": invalid type in '" + line + "'");
+
+            declareArray(line.text(1), line.type(2), line.toInt(3));
+
+            add(Opcode.ARRAY, symbol(line.text(1)));
+
+        } else {
+            if (opcode == null || operand != Opcode.Operand.NONE || line.count() != 1)
+                throw new Exception("\nError at line " + line.number() + ": invalid instruction '" + line + "'");
+
+            add(opcode);
+        }
+    } // method parseInstruction
+
+    // the field without its last characters, like the colon after a label
+
+    private static int parseLabel(TextLine line, int field, int trim) throws Exception {
+        if (!line.isInteger(field, trim))
+            throw new Exception("\nError at line " + line.number() + ": invalid label in '" + line + "'");
+
+        return (int) line.toLong(field, trim);
+    } // method parseLabel
+
+    /*
+     * A line of the text of a program, split at the white space into fields that are read in
+     * place from the bytes of the text
+     *
+     * Only the names and the floats become strings. A line ends at a new line, a carriage
+     * return or both.
+     */
+    private static class TextLine {
+
+        // the longest line is an array directive, a line with more fields is never valid
+
+        private static final int FIELDS = 5;
+
+        private static final String[] TYPES = { "int", "float", "boolean" };
+
+        private ByteBuffer text;
+        private int position;
+        private int number;
+
+        private int[] starts;
+        private int[] ends;
+        private int count;
+        private int last;
+
+        TextLine(ByteBuffer text) {
+            this.text = text;
+            this.position = text.position();
+            this.number = 0;
+            this.starts = new int[FIELDS + 1];
+            this.ends = new int[FIELDS + 1];
+            this.count = 0;
+        } // constructor TextLine
+
+        boolean next() {
+            ByteBuffer text = this.text;
+            int limit = text.limit();
+
+            if (this.position >= limit)
+                return false;
+
+            this.number++;
+            this.count = 0;
+
+            boolean inField = false;
+            int position = this.position;
+
+            for (; position < limit; position++) {
+                int c = text.get(position) & 0xFF;
+
+                if (c == '\n' || c == '\r')
+                    break;
+
+                if (c > ' ' && !inField) {
+                    if (this.count < this.starts.length)
+                        this.starts[this.count] = position;
+
+                    inField = true;
+                } else if (c <= ' ' && inField) {
+                    field(position);
+                    inField = false;
+                }
+            }
+
+            if (inField)
+                field(position);
+
+            if (position < limit && text.get(position) == '\r')
+                position++;
+
+            if (position < limit && text.get(position) == '\n')
+                position++;
+
+            this.position = position;
+
+            return true;
+        } // method next
+
+        private void field(int end) {
+            if (this.count < this.ends.length)
+                this.ends[this.count] = end;
+
+            this.last = end;
+            this.count++;
+        } // method field
+
+        int number() {
+            return this.number;
+        } // method number
+
+        int count() {
+            return this.count;
+        } // method count
+
+        private int length(int field) {
+            return this.ends[field] - this.starts[field];
+        } // method length
+
+        // 0 past the end of the field
+
+        char charAt(int field, int index) {
+            return index < length(field) ? (char) (this.text.get(this.starts[field] + index) & 0xFF) : 0;
+        } // method charAt
+
+        boolean is(int field, String value) {
+            if (length(field) != value.length())
+                return false;
+
+            for (int i = 0; i < value.length(); i++)
+                if (this.text.get(this.starts[field] + i) != value.charAt(i))
+                    return false;
+
+            return true;
+        } // method is
+
+        boolean endsWith(int field, char c) {
+            return length(field) > 0 && this.text.get(this.ends[field] - 1) == c;
+        } // method endsWith
+
+        boolean isInteger(int field, int trim) {
+            int start = this.starts[field] + (charAt(field, 0) == '-' ? 1 : 0);
+            int end = this.ends[field] - trim;
+
+            if (start >= end)
+                return false;
+
+            for (int i = start; i < end; i++)
+                if (this.text.get(i) < '0' || this.text.get(i) > '9')
+                    return false;
+
+            return true;
+        } // method isInteger
+
+        long toLong(int field, int trim) {
+            int start = this.starts[field];
+            int end = this.ends[field] - trim;
+            boolean negative = charAt(field, 0) == '-';
+
+            // longer numbers may not fit, Long.parseLong reports them
+
+            if (!isInteger(field, trim) || end - start > 18)
+                return Long.parseLong(text(start, end));
+
+            long value = 0;
+
+            for (int i = negative ? start + 1 : start; i < end; i++)
+                value = value * 10 + this.text.get(i) - '0';
+
+            return negative ? -value : value;
+        } // method toLong
+
+        int toInt(int field) {
+            long value = toLong(field, 0);
+
+            if (value != (int) value)
+                throw new NumberFormatException("For input string: \"" + text(field) + "\"");
+
+            return (int) value;
+        } // method toInt
+
+        Opcode opcode(int field) {
+            return Opcode.fromMnemonic(this.text, this.starts[field], this.ends[field]);
+        } // method opcode
+
+        // the names of the types are the same strings for every line
+
+        String type(int field) {
+            for (String type : TYPES)
+                if (is(field, type))
+                    return type;
+
+            return text(field);
+        } // method type
+
+        String text(int field) {
+            return text(this.starts[field], this.ends[field]);
+        } // method text
+
+        private String text(int start, int end) {
+            byte[] bytes = new byte[end - start];
+
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = this.text.get(start + i);
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        } // method text
+
+        // the line without the white space around it, for the errors
+
+        @Override
+        public String toString() {
+            return this.count == 0 ? "" : text(this.starts[0], this.last);
+        } // method toString
+
+    } // class TextLine
+
+} // class StackMachineCode
\ No newline at end of file
@@ -5,30 +5,247 @@ package stackmachine.compiler.sp3;
 
 import slu.compiler.LexicalAnalyzer;
 
-import java.io.PrintWriter;
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class StackMachineCompiler implements IStackMachineCompiler {
-    private ISyntaxAnalyzer parser;
+
+    // version of the code generator, it must change whenever the code of a program changes so
+    // that the compilation cache does not return code of an older version; the key of the cache
+    // also has the fingerprint of the classes of the compiler, in case it does not
+
+    public static final String VERSION = "3.13";
+
+    // fingerprint of the classes of the compiler, read the first time the cache needs it, empty
+    // when the classes cannot be read
+
+    private static volatile String fingerprint;
+
+    private CompilerOptions options;
+
+    public StackMachineCompiler() {
+        this(new CompilerOptions());
+    } // constructor StackMachineCompiler
+
+    public StackMachineCompiler(CompilerOptions options) {
+        this.options = options;
+    } // constructor StackMachineCompiler
+
+    public CompilerOptions getOptions() {
+        return this.options;
+    } // method getOptions
 
     @Override
     public void compile(String program, String fileName) throws Exception {
-        String code;
+        Path outputFile = Paths.get(fileName);
 
         try {
 
-            this.parser = new SyntaxAnalyzer( new LexicalAnalyzer(program, StandardCharsets.UTF_8) );
+            String key = key(program, "text");
+
+            if (key != null && this.options.getCache().fetch(key, outputFile))
+                return;
 
-            code = this.parser.compile();
+            StackMachineCode code = code(program);
 
-            PrintWriter outputFile = new PrintWriter(fileName);
+            // the text of the code is streamed straight to the output file
 
-            outputFile.print(code);
-            outputFile.close();
+            try (Writer output = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)) {
+                code.write(output);
+            }
+
+            if (key != null)
+                this.options.getCache().store(key, outputFile);
 
         } catch (Exception e) {
+            Files.deleteIfExists(outputFile);
+
             throw new Exception(e.getMessage());
         }
     } // method compile
 
+    @Override
+    public void compileBinary(String program, String fileName) throws Exception {
+        Path outputFile = Paths.get(fileName);
+
+        try {
+
+            String key = key(program, "binary");
+
+            if (key != null && this.options.getCache().fetch(key, outputFile))
+                return;
+
+            StackMachineCode code = code(program);
+
+            try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(outputFile))) {
+                new BytecodeWriter().write(code, output);
+            }
+
+            if (key != null)
+                this.options.getCache().store(key, outputFile);
+
+        } catch (Exception e) {
+            Files.deleteIfExists(outputFile);
+
+            throw new Exception(e.getMessage());
+        }
+    } // method compileBinary
+
+    // compiles every program to a file with the same name in the output directory, under the
+    // folders that separate it from the folder of all the programs, using a thread for every
+    // processor
+
+    @Override
+    public List<CompilationResult> compileAll(Collection<Path> programs, Path outputDirectory) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        try {
+            return compileAll(programs, outputDirectory, executor);
+        } finally {
+            executor.shutdown();
+        }
+    } // method compileAll
+
+    // compiles the programs in the given executor, a program that fails to compile does not
+    // stop the others and the results are in the order of the programs
+
+    public List<CompilationResult> compileAll(Collection<Path> programs, Path outputDirectory, Executor executor) throws Exception {
+        Path base = base(programs);
+        List<Path> outputs = new ArrayList<Path>();
+        Map<Path, Path> compiled = new HashMap<Path, Path>();
+
+        // programs with the same name in different folders keep their folders, so two programs
+        // never write the same output at the same time
+
+        for (Path program : programs) {
+            Path output = outputDirectory.resolve(base.relativize(program.toAbsolutePath().normalize()));
+            Path other = compiled.put(output, program);
+
+            if (other != null)
+                throw new Exception("\nError: '" + other + "' and '" + program + "' would both be compiled to '" + output + "'");
+
+            outputs.add(output);
+        }
+
+        List<CompletableFuture<CompilationResult>> tasks = new ArrayList<CompletableFuture<CompilationResult>>();
+        int index = 0;
+
+        for (Path program : programs) {
+            Path output = outputs.get(index++);
+
+            Files.createDirectories(output.getParent());
+
+            tasks.add(CompletableFuture.supplyAsync(() -> compile(program, output), executor));
+        }
+
+        List<CompilationResult> results = new ArrayList<CompilationResult>();
+
+        for (CompletableFuture<CompilationResult> task : tasks)
+            results.add(task.join());
+
+        return results;
+    } // method compileAll
+
+    // the deepest folder of all the programs
+
+    private static Path base(Collection<Path> programs) {
+        Path base = null;
+
+        for (Path program : programs) {
+            Path folder = program.toAbsolutePath().normalize().getParent();
+
+            if (base == null)
+                base = folder;
+
+            while (!folder.startsWith(base))
+                base = base.getParent();
+        }
+
+        return base == null ? Paths.get("").toAbsolutePath() : base;
+    } // method base
+
+    private CompilationResult compile(Path program, Path output) {
+        long start = System.nanoTime();
+
+        try {
+            compile(program.toString(), output.toString());
+
+            return new CompilationResult(program, output, null, System.nanoTime() - start);
+        } catch (Exception e) {
+            return new CompilationResult(program, output, e, System.nanoTime() - start);
+        } catch (Throwable e) {
+
+            // an error of the JVM, like the stack overflow of a program nested too deeply for
+            // the parser, fails this program only, and leaves no output
+
+            try {
+                Files.deleteIfExists(output);
+            } catch (Exception ignored) {
+
+                // the error of the compilation matters more than its output
+
+            }
+
+            return new CompilationResult(program, output, new Exception("\nError: the program cannot be compiled: " + e, e), System.nanoTime() - start);
+        }
+    } // method compile
+
+    // key of the program in the compilation cache, or null without a cache, and without a
+    // fingerprint of the compiler, as an entry could not be told from one of another compiler
+
+    private String key(String program, String format) throws Exception {
+        if (this.options.getCache() == null)
+            return null;
+
+        if (fingerprint == null) {
+            String classes = CompilationCache.fingerprint(StackMachineCompiler.class);
+
+            fingerprint = classes == null ? "" : classes;
+        }
+
+        if (fingerprint.isEmpty())
+            return null;
+
+        return CompilationCache.key(VERSION + ";" + fingerprint, format + ";" + this.options.getKey(), Files.readAllBytes(Paths.get(program)));
+    } // method key
+
+    private StackMachineCode code(String program) throws Exception {
+        // every compilation has its own parser, so compilations can run at the same time
+
+        ISyntaxAnalyzer parser = new SyntaxAnalyzer( new LexicalAnalyzer(program, StandardCharsets.UTF_8), this.options.getTypedOpcodes(), this.options.getLineTable() );
+
+        StackMachineCode code = parser.compileCode();
+
+        if (this.options.getOptimizer() != null)
+            code = this.options.getOptimizer().optimize(code);
+
+        if (this.options.getSlots())
+            code = new SlotAllocator().allocate(code);
+
+        if (this.options.getSuperinstructions())
+            code = new InstructionFuser().fuse(code);
+
+        if (this.options.getResolveLabels())
+            code = new LabelResolver(this.options.getLabelTable()).resolve(code);
+
+        if (!this.options.getLineTable())
+            code.clearLines();
+
+        return code;
+    } // method code
+
 } // class StackMachineCompiler
\ No newline at end of file
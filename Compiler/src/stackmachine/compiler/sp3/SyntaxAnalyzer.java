@@ -5,10 +5,16 @@ package stackmachine.compiler.sp3;
 
 import slu.compiler.*;
 
-import java.util.ArrayList;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /*
  * Rules
@@ -70,84 +76,143 @@ import java.util.Map;
  *
  * more-relational-expression -> relational-operator expression relational-expression-prime |
  *                             epsilon
+ *
+ * The right-recursive productions of declarations, instructions, identifiers and of the
+ * operators of every level of precedence are parsed with loops, so only the nesting of
+ * parentheses, blocks, if, while and do uses the stack of the parser.
  */
 public class SyntaxAnalyzer implements ISyntaxAnalyzer {
     private IToken token;
+    private TokenKind kind;
     private ILexicalAnalyzer scanner;
     private Map<String, IDataType> symbols;
-    private List<String> code;
+    private StackMachineCode code;
+
+    // variables initialized with a constant in a declaration that is not nested in an if,
+    // while or do, and the variables that are assigned in an instruction
+
+    private Map<String, Value> constants;
+    private Set<String> assigned;
+    private int depth;
+
+    // emits the operators specialized for int and float operands
+
+    private boolean typed;
+
+    // keeps the line of the program of every instruction, which the text of the code writes as
+    // a line table the stack machine of the course does not read
 
-    private static int counter = 0;
+    private boolean lineTable;
+
+    // FIRST(type) and the tokens that start an instruction in instructions
+
+    private static final Set<TokenKind> TYPES = EnumSet.of(TokenKind.INT, TokenKind.FLOAT, TokenKind.BOOLEAN);
+
+    private static final Set<TokenKind> FIRST_INSTRUCTIONS = EnumSet.of(
+            TokenKind.INT, TokenKind.FLOAT, TokenKind.BOOLEAN,
+            TokenKind.ID, TokenKind.PRINT, TokenKind.IF, TokenKind.WHILE, TokenKind.DO);
+
+    // numbers of the labels, every compilation starts again from 0
+
+    private int counter;
 
     public SyntaxAnalyzer(ILexicalAnalyzer lex) {
+        this(lex, false);
+    } // constructor SyntaxAnalyzer
+
+    public SyntaxAnalyzer(ILexicalAnalyzer lex, boolean typed) {
+        this(lex, typed, false);
+    } // constructor SyntaxAnalyzer
+
+    public SyntaxAnalyzer(ILexicalAnalyzer lex, boolean typed, boolean lineTable) {
         this.scanner = lex;
-        this.token = this.scanner.getToken();
         this.symbols = new HashMap<String, IDataType>();
-        this.code = new ArrayList<String>();
-    } // class SyntaxAnalyzer
+        this.code = new StackMachineCode();
+        this.constants = new HashMap<String, Value>();
+        this.assigned = new HashSet<String>();
+        this.depth = 0;
+        this.typed = typed;
+        this.lineTable = lineTable;
+        this.counter = 0;
+
+        next();
+    } // constructor SyntaxAnalyzer
 
     public String compile() throws Exception {
-        program();
+        StringWriter code = new StringWriter();
+
+        compile(code);
+
+        return code.toString();
+    } // method compile
 
-        // stack machine code
+    public void compile(OutputStream output) throws Exception {
+        compile(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    } // method compile
 
-        String code = "";
+    public void compile(Writer output) throws Exception {
 
-        for (String instruction : this.code)
-            code = code + instruction + "\n";
+        // the parser emits the instructions into the intermediate code, the text of the
+        // program is only produced when it is written to the sink
 
-        return code;
+        compileCode().write(output);
     } // method compile
 
+    public StackMachineCode compileCode() throws Exception {
+        program();
+
+        if (!this.lineTable)
+            this.code.clearLines();
+
+        return this.code;
+    } // method compileCode
+
     private void program() throws Exception {
-        match("void");
-        match("main");
-        match("open_curly_bracket");
+        match(TokenKind.VOID);
+        match(TokenKind.MAIN);
+        match(TokenKind.OPEN_CURLY_BRACKET);
 
         declarations();
         instructions();
 
-        match("closed_curly_bracket");
+        match(TokenKind.CLOSED_CURLY_BRACKET);
 
-        this.code.add("halt");
+        this.code.add(Opcode.HALT);
+
+        propagateConstants();
     } // method program
 
     private void declarations() throws Exception {
-        if (this.token.getName().equals("int") || this.token.getName().equals("float") || this.token.getName().equals("boolean")) {
+        while (TYPES.contains(this.kind))
             declaration();
-            declarations();
-        }
     } // method declarations
 
     private void declaration() throws Exception {
         identifiers(type());
-        match("semicolon");
+        match(TokenKind.SEMICOLON);
     } // method declaration
 
     private String type() throws Exception {
-        String type = this.token.getName();
-
-        if (type.equals("int")) {
-            match("int");
-        } else if (type.equals("float")) {
-            match("float");
-        } else if (type.equals("boolean")) {
-            match("boolean");
-        }
+        TokenKind type = this.kind;
 
-        return type;
+        if (TYPES.contains(type))
+            match(type);
+
+        return type.getName();
     } // method type
 
     private void identifiers(String type) throws Exception {
-        if (this.token.getName().equals("id")) {
+        if (this.kind == TokenKind.ID) {
             Identifier id = (Identifier) this.token;
 
-            if (this.symbols.get(id.getLexeme()) == null)
+            if (this.symbols.get(id.getLexeme()) == null) {
                 this.symbols.put(id.getLexeme(), new PrimitiveType(type));
-            else
+                this.code.declare(id.getLexeme(), type);
+            } else {
                 throw new Exception("\nError at line " + this.scanner.getLine() + ": identifier '" + id.getLexeme() + "' is already declared");
+            }
 
-            match("id");
+            match(TokenKind.ID);
 
             optionalDeclaration(type, id);
 
@@ -156,57 +221,64 @@ public class SyntaxAnalyzer implements ISyntaxAnalyzer {
     } // method identifiers
 
     private void moreIdentifiers(String type) throws Exception {
-        if (this.token.getName().equals("comma")) {
-            match("comma");
+        while (this.kind == TokenKind.COMMA) {
+            match(TokenKind.COMMA);
 
             Identifier id = (Identifier) this.token;
 
-            if (this.symbols.get(id.getLexeme()) == null)
+            if (this.symbols.get(id.getLexeme()) == null) {
                 this.symbols.put(id.getLexeme(), new PrimitiveType(type));
-            else
+                this.code.declare(id.getLexeme(), type);
+            } else {
                 throw new Exception("\nError at line " + this.scanner.getLine() + ": identifier '" + id.getLexeme() + "' is already declared");
+            }
 
-            match("id");
+            match(TokenKind.ID);
 
             optionalDeclaration(type, id);
-
-            moreIdentifiers(type);
         }
     } // method moreIdentifiers
 
     private void optionalDeclaration(String type, Identifier id) throws Exception {
-        if (this.token.getName().equals("assignment")) {
+        if (this.kind == TokenKind.ASSIGNMENT) {
 
-            match("assignment");
+            match(TokenKind.ASSIGNMENT);
 
             // the token 'assignment' allows to assign  an initial value to a variable in the declaration
 
-            this.code.add("push " + id.getLexeme());
+            this.code.addAddress(id.getLexeme());
 
-            expression();
+            Value value = assign(type, logicExpression());
 
-            this.code.add("store");
+            this.code.add(Opcode.STORE);
 
-        } else if (this.token.getName().equals("open_square_bracket")) {
+            // the constant is kept as it was stored: a typed program pushed it as a float for a
+            // float variable, an untyped one pushed it as it is
+
+            if (value.isConstant() && this.depth == 0)
+                this.constants.put(id.getLexeme(), this.typed ? value.convert(type) : value);
+
+        } else if (this.kind == TokenKind.OPEN_SQUARE_BRACKET) {
 
             // the token 'open_square_bracket' declares an array of int, float or boolean
 
-            match("open_square_bracket");
+            match(TokenKind.OPEN_SQUARE_BRACKET);
 
             // array of a primitive data  type: int, float, boolean
 
             int size = 1;
 
-            if (this.token.getName().equals("int")) {
+            if (this.kind == TokenKind.INT) {
                 IntegerNumber number = (IntegerNumber) this.token;
 
                 size = number.getValue();
 
-                this.code.add("array " + id.getLexeme() + " " + type + " " + size);
+                this.code.declareArray(id.getLexeme(), type, size);
+                this.code.add(Opcode.ARRAY, this.code.symbol(id.getLexeme()));
             }
 
-            match("int");
-            match("closed_square_bracket");
+            match(TokenKind.INT);
+            match(TokenKind.CLOSED_SQUARE_BRACKET);
 
             this.symbols.put(id.getLexeme(), new ArrayType(type, size));
 
@@ -214,137 +286,175 @@ public class SyntaxAnalyzer implements ISyntaxAnalyzer {
     } // method optionalDeclaration
 
     private void instructions() throws Exception {
-        String tokenName = this.token.getName();
-
-        if (tokenName.equals("int")
-                || tokenName.equals("float")
-                || tokenName.equals("boolean")
-                || tokenName.equals("id")
-                || tokenName.equals("print")
-                || tokenName.equals("if")
-                || tokenName.equals("while")
-                || tokenName.equals("do")) {
+        while (FIRST_INSTRUCTIONS.contains(this.kind))
             instruction();
-            instructions();
-        }
     } // method instructions
 
     private void instruction() throws Exception {
-        String tokenName = this.token.getName();
 
         // checks the tokens in FIRST(instruction)
 
-        if (tokenName.equals("int") || tokenName.equals("float") || tokenName.equals("boolean")) {
+        switch (this.kind) {
+            case INT:
+            case FLOAT:
+            case BOOLEAN:
 
-            declaration();
+                declaration();
 
-        } else if (tokenName.equals("id")) {
+                break;
 
-            assignment();
-            match("semicolon");
+            case ID:
 
-        } else if (tokenName.equals("print")) {
-            match("print");
-            match("open_parenthesis");
+                assignment();
+                match(TokenKind.SEMICOLON);
 
-            expression();
+                break;
 
-            this.code.add("print");
+            case PRINT:
+                match(TokenKind.PRINT);
+                match(TokenKind.OPEN_PARENTHESIS);
 
-            match("closed_parenthesis");
-            match("semicolon");
+                expression();
 
-        } else if (tokenName.equals("if")) {
+                this.code.add(Opcode.PRINT);
 
-            match("if");
-            match("open_parenthesis");
+                match(TokenKind.CLOSED_PARENTHESIS);
+                match(TokenKind.SEMICOLON);
 
-            logicExpression();
+                break;
 
-            String out = newLabel();
+            case IF:
 
-            this.code.add("gofalse label " + out);
+                ifInstruction();
 
-            match("closed_parenthesis");
+                break;
 
-            instruction();
+            case WHILE:
 
-            // for an else statement call method for else instructions
-            if(this.token.getName().equals("else")) {
-                optionalElse(out);
-            } else {
-                this.code.add(out + ":");
-            }
+                whileInstruction();
 
-        } else if (tokenName.equals("while")) {
-            match("while");
-            match("open_parenthesis");
+                break;
 
-            String test = newLabel();
-            this.code.add("label " + test + ":");
+            case DO:
 
-            logicExpression();
+                doInstruction();
 
-            String out = newLabel();
+                break;
 
-            this.code.add("gofalse label " + out);
+            case OPEN_CURLY_BRACKET:
+                match(TokenKind.OPEN_CURLY_BRACKET);
 
-            match("closed_parenthesis");
+                instructions();
 
-            instruction();
+                match(TokenKind.CLOSED_CURLY_BRACKET);
 
-            this.code.add("goto label " + test);
-            this.code.add("label " + out + ":");
+                break;
 
-        } else if (tokenName.equals("do")) {
-            match("do");
-            match("open_curly_bracket");
+            default:
+                break;
+        }
 
-            instruction();
+    } // method instruction
 
-            String test = newLabel();
-            this.code.add("label " + test + ":");
+    private void ifInstruction() throws Exception {
+        match(TokenKind.IF);
+        match(TokenKind.OPEN_PARENTHESIS);
 
-            match("closed_curly_bracket");
+        int out = newLabel();
 
-            if(this.token.getName().equals("while")) {
+        condition(out);
 
-                match("open_parenthesis");
+        match(TokenKind.CLOSED_PARENTHESIS);
 
-                logicExpression();
+        this.depth++;
 
-                String out = newLabel();
+        instruction();
 
-                this.code.add("gofalse label " + out);
+        this.depth--;
 
-                match("closed_parenthesis");
+        // for an else statement call method for else instructions
+        if(this.kind == TokenKind.ELSE) {
+            optionalElse(out);
+        } else {
+            this.code.add(Opcode.LABEL, out);
+        }
+    } // method ifInstruction
 
-                this.code.add("goto label " + test);
-                this.code.add("label " + out + ":");
-            }
+    private void whileInstruction() throws Exception {
+        int line = this.scanner.getLine();
 
-        } else if (tokenName.equals("open_curly_bracket")) {
-            match("open_curly_bracket");
+        match(TokenKind.WHILE);
+        match(TokenKind.OPEN_PARENTHESIS);
 
-            instructions();
+        int test = newLabel();
+        this.code.add(Opcode.LABEL, test);
 
-            match("closed_curly_bracket");
-        }
+        int out = newLabel();
 
-    } // method instruction
+        condition(out);
+
+        match(TokenKind.CLOSED_PARENTHESIS);
+
+        this.depth++;
+
+        instruction();
+
+        this.depth--;
+
+        // the jump back to the test belongs to the line of the while
+
+        this.code.setLine(line);
+
+        this.code.add(Opcode.GOTO, test);
+        this.code.add(Opcode.LABEL, out);
+    } // method whileInstruction
+
+    private void doInstruction() throws Exception {
+        match(TokenKind.DO);
+
+        int body = newLabel();
+        this.code.add(Opcode.LABEL, body);
+
+        this.depth++;
+
+        instruction();
+
+        this.depth--;
+
+        int line = this.scanner.getLine();
+
+        match(TokenKind.WHILE);
+        match(TokenKind.OPEN_PARENTHESIS);
+
+        int out = newLabel();
+
+        condition(out);
+
+        match(TokenKind.CLOSED_PARENTHESIS);
+        match(TokenKind.SEMICOLON);
+
+        this.code.setLine(line);
+
+        this.code.add(Opcode.GOTO, body);
+        this.code.add(Opcode.LABEL, out);
+    } // method doInstruction
 
-    private void optionalElse(String else1) throws Exception {
-        String out = newLabel();
+    private void optionalElse(int else1) throws Exception {
+        int out = newLabel();
 
-        this.code.add("goto label " + out);
-        this.code.add("label " + else1 + ":");
+        this.code.add(Opcode.GOTO, out);
+        this.code.add(Opcode.LABEL, else1);
 
-        if(this.token.getName().equals("else")) {
-            match("else");
+        if(this.kind == TokenKind.ELSE) {
+            match(TokenKind.ELSE);
+
+            this.depth++;
 
             instruction();
 
-            this.code.add("label " + out + ":");
+            this.depth--;
+
+            this.code.add(Opcode.LABEL, out);
         }
     } // method optionalElse
 
@@ -355,329 +465,592 @@ public class SyntaxAnalyzer implements ISyntaxAnalyzer {
             throw new Exception("\nError at line " + this.scanner.getLine() + ": identifier '" + id.getLexeme() + "' is not declared");
         }
 
-        this.code.add("push " + id.getLexeme());
+        this.code.addAddress(id.getLexeme());
+        this.assigned.add(id.getLexeme());
 
-        match("id");
+        match(TokenKind.ID);
 
         optionalArray(id);
 
-        match("assignment");
+        match(TokenKind.ASSIGNMENT);
 
-        expression();
+        assign(this.code.getType(this.code.symbol(id.getLexeme())), logicExpression());
 
-        this.code.add("store");
+        this.code.add(Opcode.STORE);
     } // method assignment
 
-    private void logicFactor() throws Exception {
-        String tokenName = this.token.getName();
+    private Value logicFactor() throws Exception {
+        Value value;
 
-        if(tokenName.equals("not")) {
+        switch (this.kind) {
+            case NOT:
 
-            match("not");
+                match(TokenKind.NOT);
 
-            logicFactor();
+                value = not(logicFactor());
 
-            this.code.add("!");
+                break;
 
-        } else if (tokenName.equals("true")) {
+            case TRUE:
 
-            match("true");
+                value = push(Value.constant("boolean", 1));
 
-        } else if (tokenName.equals("false")) {
+                match(TokenKind.TRUE);
 
-            match("false");
+                break;
 
-        } else {
+            case FALSE:
+
+                value = push(Value.constant("boolean", 0));
+
+                match(TokenKind.FALSE);
+
+                break;
 
-            relationalExpression();
+            default:
+
+                value = relationalExpression();
 
         }
 
+        return value;
     } // method logicFactor
 
-    private void relationalExpression() throws Exception {
-        expression(); moreRelationalExpression();
+    private Value relationalExpression() throws Exception {
+        return moreRelationalExpression(expression());
     } // method relationalExpression
 
-    private void moreRelationalExpression() throws Exception {
-        String operator = this.token.getName();
-        if (operator.equals("greater_than")) {
+    private Value moreRelationalExpression(Value left) throws Exception {
+        Opcode operator;
+
+        while ((operator = relational(this.kind)) != null) {
 
-            match("greater_than");
+            match(this.kind);
 
             relationalOperator();
-            expression();
 
-            this.code.add(">");
+            left = operation(operator, left, this.code.size(), expression());
+        }
 
-            moreRelationalExpression();
+        return left;
+    } // method moreRelationalExpression
 
-        } else if (operator.equals("greater_equals")) {
+    private void relationalOperator() throws Exception {
+        switch (this.kind) {
+            case GREATER_THAN:
+            case GREATER_EQUALS:
+            case LESS_THAN:
+            case LESS_EQUALS:
+                match(this.kind);
+                break;
+            default:
+                break;
+        }
+    } // method relationalOperator
 
-            match("greater_equals");
+    // operator of a relational token, or null
+
+    private static Opcode relational(TokenKind kind) {
+        switch (kind) {
+            case GREATER_THAN:
+                return Opcode.GREATER_THAN;
+            case GREATER_EQUALS:
+                return Opcode.GREATER_EQUALS;
+            case LESS_THAN:
+                return Opcode.LESS_THAN;
+            case LESS_EQUALS:
+                return Opcode.LESS_EQUALS;
+            case EQUALS:
+                return Opcode.EQUALS;
+            case NOT_EQUALS:
+                return Opcode.NOT_EQUALS;
+            default:
+                return null;
+        }
+    } // method relational
 
-            relationalOperator();
-            expression();
+    private void optionalArray(Identifier id) throws Exception {
+        boolean array = this.symbols.get(id.getLexeme()) instanceof ArrayType;
 
-            this.code.add(">=");
+        if (this.kind == TokenKind.OPEN_SQUARE_BRACKET) {
 
-            moreRelationalExpression();
+            if (!array) {
+                throw new Exception("\nError at line " + this.scanner.getLine() + ": '" + id.getLexeme() + "' is not an array");
+            }
 
-        } else if (operator.equals("less_than")) {
+            match(TokenKind.OPEN_SQUARE_BRACKET);
 
-            match("less_than");
+            if (expression().isFloat()) {
+                throw new Exception("\nError at line " + this.scanner.getLine() + ": the index of array '" + id.getLexeme() + "' must be an int");
+            }
 
-            relationalOperator();
-            expression();
+            match(TokenKind.CLOSED_SQUARE_BRACKET);
 
-            this.code.add("<");
+            // the operator + is used to calculate the address of the index of the array defined by expression
+            // the value of expression is the offset added to the base address of the array
 
-            moreRelationalExpression();
+            this.code.add(this.typed ? Opcode.IADD : Opcode.ADD);
 
-        } else if (operator.equals("less_equals")) {
+        } else if (array) {
+            throw new Exception("\nError at line " + this.scanner.getLine() + ": array '" + id.getLexeme() + "' must be indexed");
+        }
+    } // method optionalArray
 
-            match("less_equals");
+    // a condition of an if, while or do is translated to jumps: the code falls through when the
+    // condition is true and jumps to the label when it is false, and the evaluation of && and ||
+    // stops as soon as the left operand decides the result
+    //
+    // condition      ->  term-1 || ... || term-n
+    //                    term-k jumps to label k when false, then goto true-label, label k:
+    //                    term-n jumps to the label of the condition
+    // condition-term ->  factor-1 && ... && factor-n
+    //                    every factor jumps to the label of the condition when false
 
-            relationalOperator();
-            expression();
+    private void condition(int label) throws Exception {
+        int alternative = newLabel();
+        int start = this.code.size();
+        int success = -1;
 
-            this.code.add("<=");
+        conditionTerm(alternative);
 
-            moreRelationalExpression();
+        while (this.kind == TokenKind.OR) {
+            match(TokenKind.OR);
 
-        } else if (operator.equals("equals")) {
+            if (success < 0)
+                success = newLabel();
 
-            match("equals");
+            this.code.add(Opcode.GOTO, success);
+            this.code.add(Opcode.LABEL, alternative);
 
-            relationalOperator();
-            expression();
+            alternative = newLabel();
+            start = this.code.size();
 
-            this.code.add("==");
+            conditionTerm(alternative);
+        }
 
-            moreRelationalExpression();
+        // the last term jumps to the label of the condition
 
-        } else if (operator.equals("not_equals")) {
+        for (int i = start; i < this.code.size(); i++)
+            if (this.code.getOpcode(i) == Opcode.GOFALSE || this.code.getOpcode(i) == Opcode.GOTO)
+                if (this.code.getOperand(i) == alternative)
+                    this.code.set(i, this.code.getOpcode(i), label);
 
-            match("not_equals");
+        if (success >= 0)
+            this.code.add(Opcode.LABEL, success);
+    } // method condition
 
-            relationalOperator();
-            expression();
+    private void conditionTerm(int label) throws Exception {
+        conditionFactor(false, label);
 
-            this.code.add("!=");
+        while (this.kind == TokenKind.AND) {
+            match(TokenKind.AND);
 
-            moreRelationalExpression();
+            conditionFactor(false, label);
         }
-    } // method moreRelationalExpression
+    } // method conditionTerm
 
-    private void relationalOperator() throws Exception {
-        String operator = this.token.getName();
+    // jumps to the label when the factor is equal to jump, falls through otherwise
 
-        if (operator.equals("greater_than")) {
+    private void conditionFactor(boolean jump, int label) throws Exception {
+        TokenKind kind = this.kind;
 
-            match("greater_than");
+        if (kind == TokenKind.NOT) {
 
-        } else if (operator.equals("greater_equals")) {
+            match(TokenKind.NOT);
+
+            conditionFactor(!jump, label);
+
+        } else if (kind == TokenKind.TRUE || kind == TokenKind.FALSE) {
+
+            if (kind == TokenKind.TRUE == jump)
+                this.code.add(Opcode.GOTO, label);
+
+            match(kind);
+
+        } else {
 
-            match("greater_equals");
+            Value value = relationalExpression();
 
-        } else if (operator.equals("less_than")) {
+            if (value.isConstant()) {
+                this.code.truncate(this.code.size() - 1);
 
-            match("less_than");
+                if ((value.getInt() != 0 || value.getFloat() != 0) == jump)
+                    this.code.add(Opcode.GOTO, label);
+            } else {
 
-        } else if(operator.equals("less_equals")) {
+                // gofalse jumps when the value is false, the value is negated to jump when true
 
-            match("less_equals");
+                if (jump)
+                    this.code.add(Opcode.NOT);
 
+                this.code.add(Opcode.GOFALSE, label);
+            }
         }
+    } // method conditionFactor
 
-    } // method relationalOperator
+    private Value logicExpression() throws Exception {
+        return moreLogicExpression(logicTerm());
+    } // method logicExpression
 
-    private void optionalArray(Identifier id) throws Exception {
-        if (this.token.getName().equals("open_square_bracket")) {
+    private Value moreLogicExpression(Value left) throws Exception {
+        while (this.kind == TokenKind.OR) {
+            match(TokenKind.OR);
 
-            match("open_square_bracket");
+            left = operation(Opcode.OR, left, this.code.size(), logicTerm());
+        }
 
-            expression();
+        return left;
+    } // method moreLogicExpression
 
-            match("closed_square_bracket");
+    private Value logicTerm() throws Exception {
+        return moreLogicTerm(logicFactor());
+    } // method logicTerm
 
-            // the operator + is used to calculate the address of the index of the array defined by expression
-            // the value of expression is the offset added to the base address of the array
+    private Value moreLogicTerm(Value left) throws Exception {
+        while (this.kind == TokenKind.AND) {
 
-            this.code.add("+");
+            match(TokenKind.AND);
 
+            left = operation(Opcode.AND, left, this.code.size(), logicFactor());
         }
-    } // method optionalArray
 
-    private void logicExpression() throws Exception {
-        logicTerm(); moreLogicExpression();
+        return left;
+    } // method moreLogicTerm
 
-    } // method logicExpression
+    private Value expression() throws Exception {
+        return moreTerms(term());
+    } // method expression
+
+    private Value term() throws Exception {
+        return moreFactors(factor());
+    } // method term
+
+    private Value moreTerms(Value left) throws Exception {
+        Opcode operator;
 
-    private void moreLogicExpression() throws Exception {
-        if (this.token.getName().equals("or")) {
-            match("or");
+        while ((operator = additive(this.kind)) != null) {
 
-            logicTerm();
+            match(this.kind);
 
-            this.code.add("||");
+            left = operation(operator, left, this.code.size(), term());
 
-            moreLogicExpression();
         }
-    } // method moreLogicExpression
 
-    private void logicTerm() throws Exception {
-        logicFactor(); moreLogicTerm();
-    } // method logicTerm
+        return left;
+    } // method moreTerms
 
-    private void moreLogicTerm() throws Exception {
-        if (this.token.getName().equals("and")) {
+    // operator of an additive token, or null
 
-            match("and");
+    private static Opcode additive(TokenKind kind) {
+        switch (kind) {
+            case ADD:
+                return Opcode.ADD;
+            case SUBTRACT:
+                return Opcode.SUBTRACT;
+            default:
+                return null;
+        }
+    } // method additive
 
-            logicFactor();
+    private Value factor() throws Exception {
+        Value value;
 
-            this.code.add("&&");
+        switch (this.kind) {
+            case OPEN_PARENTHESIS:
 
-            moreLogicTerm();
-        }
-    } // method moreLogicTerm
+                match(TokenKind.OPEN_PARENTHESIS);
 
-    private void expression() throws Exception {
-        term(); moreTerms();
-    } // method expression
+                value = expression();
 
-    private void term() throws Exception {
-        factor(); moreFactors();
-    } // method term
+                match(TokenKind.CLOSED_PARENTHESIS);
 
-    private void moreTerms() throws Exception {
-        if (this.token.getName().equals("add")) {
+                break;
 
-            match("add");
+            case INT:
 
-            term();
+                value = push(Value.constant("int", ((IntegerNumber) this.token).getValue()));
 
-            this.code.add("+");
+                match(TokenKind.INT);
 
-            moreTerms();
+                break;
 
-        } else if (this.token.getName().equals("subtract")) {
+            case FLOAT:
 
-            match("subtract");
+                value = push(Value.constant(((RealNumber) this.token).getValue()));
 
-            term();
+                match(TokenKind.FLOAT);
 
-            this.code.add("-");
+                break;
 
-            moreTerms();
+            case FALSE:
 
-        }
-    } // method moreTerms
+                value = push(Value.constant("boolean", 0));
 
-    private void factor() throws Exception {
-        String tokenName = this.token.getName();
-        if (tokenName.equals("open_parenthesis")) {
+                match(TokenKind.FALSE);
 
-            match("open_parenthesis");
+                break;
 
-            expression();
+            case TRUE:
 
-            match("closed_parenthesis");
+                value = push(Value.constant("boolean", 1));
 
-        } else if (tokenName.equals("int")) {
+                match(TokenKind.TRUE);
 
-            IntegerNumber number = (IntegerNumber) this.token;
+                break;
 
-            this.code.add("push " + number.getValue());
+            case ID:
 
-            match("int");
+                Identifier id = (Identifier) this.token;
 
-        } else if (tokenName.equals("float")) {
-            RealNumber number = (RealNumber) this.token;
+                if (this.symbols.get(id.getLexeme()) == null) {
+                    throw new Exception("\nError at line " + this.scanner.getLine() + ": identifier '" + id.getLexeme() + "' is not declared");
+                }
 
-            this.code.add("push " + number.getValue());
+                this.code.addAddress(id.getLexeme());
 
-            match("float");
+                match(TokenKind.ID);
 
-        } else if (tokenName.equals("false")) {
+                optionalArray(id);
 
-            this.code.add("push 0");
+                this.code.add(Opcode.LOAD);
 
-            match("false");
+                value = Value.of(this.code.getType(this.code.symbol(id.getLexeme())));
 
-        } else if (tokenName.equals("true")) {
+                break;
 
-            this.code.add("push 1");
+            default:
 
-            match("true");
+                throw new Exception("\nError at line " + this.scanner.getLine() + ": invalid arithmetic expression: open parenthesis, int or identifier expected");
 
-        } else if (tokenName.equals("id")) {
+        }
 
-            Identifier id = (Identifier) this.token;
+        return value;
+    } // method factor
 
-            if (this.symbols.get(id.getLexeme()) == null) {
-                throw new Exception("\nError at line " + this.scanner.getLine() + ": identifier '" + id.getLexeme() + "' is not declared");
+    private Value moreFactors(Value left) throws Exception {
+        Opcode operator;
+
+        while ((operator = multiplicative(this.kind)) != null) {
+
+            match(this.kind);
+
+            left = operation(operator, left, this.code.size(), factor());
+
+        }
+
+        return left;
+    } // method moreFactors
+
+    // operator of a multiplicative token, or null
+
+    private static Opcode multiplicative(TokenKind kind) {
+        switch (kind) {
+            case MULTIPLY:
+                return Opcode.MULTIPLY;
+            case DIVIDE:
+                return Opcode.DIVIDE;
+            case REMAINDER:
+                return Opcode.REMAINDER;
+            default:
+                return null;
+        }
+    } // method multiplicative
+
+    // emits a binary operator, or replaces the pushes of its two constant operands with the
+    // push of the result
+    //
+    // mark is the index where the code of the right operand starts, the callers take it before
+    // they parse the right operand
+
+    private Value operation(Opcode operator, Value left, int mark, Value right) {
+        Value result = Value.fold(operator, left, right);
+
+        if (result != null) {
+            this.code.truncate(this.code.size() - 2);
+
+            return push(result);
+        }
+
+        boolean real = left.isFloat() || right.isFloat();
+
+        if (this.typed && operator.specialize(real) != operator) {
+
+            // an int operand of a float operator is converted, the right operand first so that
+            // the insertion at the mark does not move it
+
+            if (real) {
+                convert(right, this.code.size());
+                convert(left, mark);
             }
 
-            this.code.add("push " + id.getLexeme());
+            operator = operator.specialize(real);
+        }
 
-            match("id");
+        this.code.add(operator);
+
+        switch (operator.generic()) {
+            case ADD:
+            case SUBTRACT:
+            case MULTIPLY:
+            case DIVIDE:
+            case REMAINDER:
+                return Value.of(real ? "float" : "int");
+            default:
+                return Value.of("boolean");
+        }
+    } // method operation
 
-            optionalArray(id);
+    // converts an int or boolean value whose code ends at the index to a float, a constant is
+    // pushed as a float and any other value is followed by an i2f
 
-            this.code.add("load");
+    private void convert(Value value, int end) {
+        if (value.isFloat())
+            return;
 
-        } else {
+        if (value.isConstant())
+            this.code.set(end - 1, Opcode.PUSH_FLOAT, Double.doubleToLongBits(value.getInt()));
+        else
+            this.code.insert(end, Opcode.INT_TO_FLOAT);
+    } // method convert
 
-            throw new Exception("\nError at line " + this.scanner.getLine() + ": invalid arithmetic expression: open parenthesis, int or identifier expected");
+    // checks the value stored in a variable of the given type
 
+    private Value assign(String type, Value value) throws Exception {
+        if (value.isFloat() && !type.equals("float")) {
+            throw new Exception("\nError at line " + this.scanner.getLine() + ": a float cannot be assigned to a variable of type " + type);
         }
-    } // method factor
 
-    private void moreFactors() throws Exception {
-        if (this.token.getName().equals("multiply")) {
+        if (this.typed && type.equals("float"))
+            convert(value, this.code.size());
+
+        return value;
+    } // method assign
+
+    private Value not(Value operand) {
+        Value result = Value.fold(Opcode.NOT, operand);
 
-            match("multiply");
+        if (result != null) {
+            this.code.truncate(this.code.size() - 1);
 
-            factor();
+            return push(result);
+        }
 
-            this.code.add("*");
+        this.code.add(Opcode.NOT);
 
-            moreFactors();
+        return Value.of("boolean");
+    } // method not
 
-        } else if (this.token.getName().equals("divide")) {
+    private Value push(Value value) {
+        push(this.code, value);
 
-            match("divide");
+        return value;
+    } // method push
 
-            factor();
+    private static void push(StackMachineCode code, Value value) {
+        if (value.isFloat())
+            code.addFloat(value.getFloat());
+        else
+            code.addInt(value.getInt());
+    } // method push
 
-            this.code.add("/");
+    private void propagateConstants() {
 
-            moreFactors();
+        // a variable keeps its initial constant if it is never assigned again and its address is
+        // only used to load its value, then every load is replaced with a push of the constant and
+        // the constant operations that result are folded
 
-        } else if (this.token.getName().equals("remainder")) {
+        Map<Integer, Value> values = new HashMap<Integer, Value>();
 
-            match("remainder");
+        for (Map.Entry<String, Value> constant : this.constants.entrySet()) {
+            int symbol = this.code.symbol(constant.getKey());
+            Value value = constant.getValue();
 
-            factor();
+            if (!this.assigned.contains(constant.getKey()) && value != null)
+                values.put(symbol, value);
+        }
 
-            this.code.add("%");
+        int[] stores = new int[this.code.getSymbolCount()];
 
-            moreFactors();
+        for (int i = 0; i < this.code.size(); i++)
+            if (this.code.getOpcode(i) == Opcode.PUSH_ADDRESS && (i + 1 == this.code.size() || this.code.getOpcode(i + 1) != Opcode.LOAD))
+                stores[(int) this.code.getOperand(i)]++;
 
+        values.keySet().removeIf(symbol -> stores[symbol] != 1);
+
+        if (values.isEmpty())
+            return;
+
+        StackMachineCode code = new StackMachineCode(this.code);
+
+        for (int i = 0; i < this.code.size(); i++) {
+            Opcode opcode = this.code.getOpcode(i);
+            Value value = opcode == Opcode.PUSH_ADDRESS ? values.get((int) this.code.getOperand(i)) : null;
+
+            code.setLine(this.code.getLine(i));
+
+            if (value != null) {
+
+                // push x, load  ->  push c
+                // push x, push c, store  ->  nothing, the value is never loaded
+
+                if (this.code.getOpcode(i + 1) == Opcode.LOAD) {
+                    push(code, value);
+                } else {
+                    i++;
+                }
+
+                i++;
+                continue;
+            }
+
+            Value result = null;
+            int size = code.size();
+
+            if (opcode.getPops() == 1 && size >= 1)
+                result = Value.fold(opcode, constantAt(code, size - 1));
+            else if (opcode.getPops() == 2 && size >= 2)
+                result = Value.fold(opcode, constantAt(code, size - 2), constantAt(code, size - 1));
+
+            if (result != null) {
+                code.truncate(size - opcode.getPops());
+                push(code, result);
+            } else {
+                code.append(this.code, i);
+            }
         }
-    } // method moreFactors
 
-    private void match(String tokenName) throws Exception {
-        if (this.token.getName().equals(tokenName))
-            this.token = this.scanner.getToken();
+        this.code = code;
+    } // method propagateConstants
+
+    private static Value constantAt(StackMachineCode code, int index) {
+        if (code.getOpcode(index) == Opcode.PUSH_INT)
+            return Value.constant("int", code.getOperand(index));
+
+        if (code.getOpcode(index) == Opcode.PUSH_FLOAT)
+            return Value.constant(code.getFloat(index));
+
+        return null;
+    } // method constantAt
+
+    private void match(TokenKind kind) throws Exception {
+        if (this.kind == kind)
+            next();
         else
-            throw new Exception("\nError at line " + this.scanner.getLine() + ": " + this.scanner.getLexeme(tokenName) + " expected");
+            throw new Exception("\nError at line " + this.scanner.getLine() + ": " + this.scanner.getLexeme(kind.getName()) + " expected");
     } // method match
 
-    private String newLabel() {
-        return counter++ + "";
-    }
+    // reads the next token and maps its name to its kind, the instructions emitted until the
+    // next token come from the line of this token
+
+    private void next() {
+        this.token = this.scanner.getToken();
+        this.kind = TokenKind.of(this.token.getName());
+
+        this.code.setLine(this.scanner.getLine());
+    } // method next
+
+    private int newLabel() {
+        return this.counter++;
+    } // method newLabel
 
 } // class SyntaxAnalyzer
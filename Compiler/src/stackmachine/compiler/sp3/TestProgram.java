@@ -5,13 +5,20 @@ package stackmachine.compiler.sp3;
 
 import slu.stackmachine.*;
 
+import java.nio.file.Paths;
+
 public class TestProgram {
 
     public static void main(String[] args) {
 
         try {
 
-            IStackMachineCompiler stackMachineCompiler = new StackMachineCompiler();
+            // the programs that did not change since the last run are copied from the cache
+
+            CompilerOptions options = new CompilerOptions();
+            options.setCache(new CompilationCache(Paths.get("sm cache"), 16 * 1024 * 1024));
+
+            IStackMachineCompiler stackMachineCompiler = new StackMachineCompiler(options);
 
             String bin = "program binary search.txt";
             String o_bin = "v2 sm binary search.txt";
@@ -61,6 +68,8 @@ public class TestProgram {
             System.out.printf("'%s' compiled successfully!\n", o_array);
             System.out.printf("'%s' compiled successfully!\n", o_assign);
 
+            System.out.println(options.getCache());
+
 
         } catch (Exception e) {
             System.out.println(e.getMessage());
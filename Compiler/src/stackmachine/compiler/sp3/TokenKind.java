@@ -0,0 +1,131 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Kinds of the tokens returned by the lexical analyzer
+ *
+ * The constants are the tokens of lexicon.txt, in the same order, followed by the tokens
+ * that the lexical analyzer builds itself. The name of a token is mapped to its kind once,
+ * when the parser reads the token, and the parser switches on the kind. The numbers read
+ * as int and float have the names of the keywords int and float.
+ */
+public enum TokenKind {
+
+    // relational operators and assignments
+
+    GREATER_THAN("greater_than"),
+    GREATER_EQUALS("greater_equals"),
+    LESS_THAN("less_than"),
+    LESS_EQUALS("less_equals"),
+    EQUALS("equals"),
+    NOT_EQUALS("not_equals"),
+    ASSIGNMENT("assignment"),
+
+    // arithmetic operators
+
+    ADD("add"),
+    SUBTRACT("subtract"),
+    MULTIPLY("multiply"),
+    DIVIDE("divide"),
+    REMAINDER("remainder"),
+
+    // logic operators
+
+    AND("and"),
+    OR("or"),
+    NOT("not"),
+
+    // delimiters
+
+    DOT("dot"),
+    COMMA("comma"),
+    SEMICOLON("semicolon"),
+    OPEN_PARENTHESIS("open_parenthesis"),
+    CLOSED_PARENTHESIS("closed_parenthesis"),
+    OPEN_SQUARE_BRACKET("open_square_bracket"),
+    CLOSED_SQUARE_BRACKET("closed_square_bracket"),
+    OPEN_CURLY_BRACKET("open_curly_bracket"),
+    CLOSED_CURLY_BRACKET("closed_curly_bracket"),
+
+    // keywords
+
+    BOOLEAN("boolean"),
+    DO("do"),
+    ELSE("else"),
+    FALSE("false"),
+    FLOAT("float"),
+    IF("if"),
+    INT("int"),
+    MAIN("main"),
+    PRINT("print"),
+    WHILE("while"),
+    TRUE("true"),
+    VOID("void"),
+
+    // identifiers and any other token, like the end of the program
+
+    ID("id"),
+    OTHER("");
+
+    private static final Map<String, TokenKind> NAMES = new HashMap<String, TokenKind>();
+
+    static {
+        for (TokenKind kind : values())
+            NAMES.put(kind.name, kind);
+    }
+
+    private final String name;
+
+    TokenKind(String name) {
+        this.name = name;
+    } // constructor TokenKind
+
+    public String getName() {
+        return this.name;
+    } // method getName
+
+    public static TokenKind of(String name) {
+        TokenKind kind = NAMES.get(name);
+
+        return kind == null ? OTHER : kind;
+    } // method of
+
+    // the kinds of the tokens of a lexicon file, an error if the lexicon has a token that has
+    // no kind
+
+    public static List<TokenKind> readLexicon(Path lexicon) throws Exception {
+        List<TokenKind> kinds = new ArrayList<TokenKind>();
+
+        try (BufferedReader lines = Files.newBufferedReader(lexicon, StandardCharsets.UTF_8)) {
+            String line;
+
+            while ((line = lines.readLine()) != null) {
+                line = line.trim();
+
+                if (line.isEmpty() || line.startsWith("//"))
+                    continue;
+
+                String name = line.split("\\s+")[0];
+
+                if (of(name) == OTHER)
+                    throw new Exception("\nError: token '" + name + "' of " + lexicon + " has no kind");
+
+                kinds.add(of(name));
+            }
+        }
+
+        return kinds;
+    } // method readLexicon
+
+} // class TokenKind
\ No newline at end of file
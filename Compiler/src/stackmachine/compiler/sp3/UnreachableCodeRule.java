@@ -0,0 +1,47 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+/*
+ * Removes the instructions between a goto or a halt and the next label, they can never execute
+ */
+public class UnreachableCodeRule implements IPeepholeRule {
+
+    @Override
+    public String getName() {
+        return "unreachable code";
+    } // method getName
+
+    // the rule keeps nothing, so one rule serves every optimization
+
+    @Override
+    public IPeepholeRule copy() {
+        return this;
+    } // method copy
+
+    @Override
+    public void prepare(StackMachineCode code) {
+    } // method prepare
+
+    @Override
+    public int apply(StackMachineCode code, int index, StackMachineCode optimized) {
+        Opcode opcode = code.getOpcode(index);
+
+        if (opcode != Opcode.GOTO && opcode != Opcode.HALT)
+            return 0;
+
+        int next = index + 1;
+
+        while (next < code.size() && code.getOpcode(next) != Opcode.LABEL)
+            next++;
+
+        if (next == index + 1)
+            return 0;
+
+        optimized.append(code, index);
+
+        return next - index;
+    } // method apply
+
+} // class UnreachableCodeRule
\ No newline at end of file
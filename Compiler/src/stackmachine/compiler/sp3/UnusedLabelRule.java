@@ -0,0 +1,45 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Removes the labels that no instruction jumps to
+ */
+public class UnusedLabelRule implements IPeepholeRule {
+    private Set<Long> targets;
+
+    @Override
+    public String getName() {
+        return "unused label";
+    } // method getName
+
+    @Override
+    public IPeepholeRule copy() {
+        return new UnusedLabelRule();
+    } // method copy
+
+    @Override
+    public void prepare(StackMachineCode code) {
+        this.targets = new HashSet<Long>();
+
+        for (int i = 0; i < code.size(); i++) {
+            Opcode opcode = code.getOpcode(i);
+
+            if (opcode != Opcode.LABEL && opcode.getOperand() == Opcode.Operand.LABEL)
+                this.targets.add(code.getOperand(i));
+        }
+    } // method prepare
+
+    @Override
+    public int apply(StackMachineCode code, int index, StackMachineCode optimized) {
+        if (code.getOpcode(index) != Opcode.LABEL || this.targets.contains(code.getOperand(index)))
+            return 0;
+
+        return 1;
+    } // method apply
+
+} // class UnusedLabelRule
\ No newline at end of file
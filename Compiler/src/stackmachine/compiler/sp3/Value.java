@@ -0,0 +1,151 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.compiler.sp3;
+
+/*
+ * Type of an expression and, when the expression is a constant, its value
+ *
+ * int and boolean constants keep their value as a long, with false = 0 and true = 1,
+ * float constants keep it as a double
+ */
+public class Value {
+    private final String type;
+    private final boolean constant;
+    private final long intValue;
+    private final double floatValue;
+
+    private Value(String type, boolean constant, long intValue, double floatValue) {
+        this.type = type;
+        this.constant = constant;
+        this.intValue = intValue;
+        this.floatValue = floatValue;
+    } // constructor Value
+
+    public static Value of(String type) {
+        return new Value(type, false, 0, 0);
+    } // method of
+
+    public static Value constant(String type, long value) {
+        return new Value(type, true, value, value);
+    } // method constant
+
+    public static Value constant(double value) {
+        return new Value("float", true, (long) value, value);
+    } // method constant
+
+    public String getType() {
+        return this.type;
+    } // method getType
+
+    public boolean isConstant() {
+        return this.constant;
+    } // method isConstant
+
+    public boolean isFloat() {
+        return this.type.equals("float");
+    } // method isFloat
+
+    public long getInt() {
+        return this.intValue;
+    } // method getInt
+
+    public double getFloat() {
+        return this.floatValue;
+    } // method getFloat
+
+    // value converted to a variable of the given type, or null if the stack machine would not convert it
+
+    public Value convert(String type) {
+        if (type.equals(this.type))
+            return this;
+
+        if (type.equals("float") && !isFloat())
+            return constant((double) this.intValue);
+
+        if (!type.equals("float") && !isFloat())
+            return constant(type, this.intValue);
+
+        return null;
+    } // method convert
+
+    // result of the operator applied to constant operands, or null if it cannot be computed at compile time
+
+    public static Value fold(Opcode operator, Value left, Value right) {
+        if (left == null || right == null || !left.constant || !right.constant)
+            return null;
+
+        Value result = compute(operator, left, right);
+
+        // an infinity or a NaN has no constant in the text of a program, so it is left for the
+        // stack machine to compute
+
+        if (result != null && result.isFloat() && !Double.isFinite(result.floatValue))
+            return null;
+
+        return result;
+    } // method fold
+
+    private static Value compute(Opcode operator, Value left, Value right) {
+
+        boolean real = left.isFloat() || right.isFloat();
+
+        switch (operator.generic()) {
+            case ADD:
+                return real ? constant(left.floatValue + right.floatValue) : constant("int", left.intValue + right.intValue);
+            case SUBTRACT:
+                return real ? constant(left.floatValue - right.floatValue) : constant("int", left.intValue - right.intValue);
+            case MULTIPLY:
+                return real ? constant(left.floatValue * right.floatValue) : constant("int", left.intValue * right.intValue);
+            case DIVIDE:
+                if (real)
+                    return constant(left.floatValue / right.floatValue);
+
+                // a division by zero is left for the stack machine to report
+
+                return right.intValue == 0 ? null : constant("int", left.intValue / right.intValue);
+            case REMAINDER:
+                if (real)
+                    return constant(left.floatValue % right.floatValue);
+
+                return right.intValue == 0 ? null : constant("int", left.intValue % right.intValue);
+            case LESS_THAN:
+                return bool(real ? left.floatValue < right.floatValue : left.intValue < right.intValue);
+            case LESS_EQUALS:
+                return bool(real ? left.floatValue <= right.floatValue : left.intValue <= right.intValue);
+            case GREATER_THAN:
+                return bool(real ? left.floatValue > right.floatValue : left.intValue > right.intValue);
+            case GREATER_EQUALS:
+                return bool(real ? left.floatValue >= right.floatValue : left.intValue >= right.intValue);
+            case EQUALS:
+                return bool(real ? left.floatValue == right.floatValue : left.intValue == right.intValue);
+            case NOT_EQUALS:
+                return bool(real ? left.floatValue != right.floatValue : left.intValue != right.intValue);
+            case AND:
+                return bool(left.isTrue() && right.isTrue());
+            case OR:
+                return bool(left.isTrue() || right.isTrue());
+            default:
+                return null;
+        }
+    } // method compute
+
+    public static Value fold(Opcode operator, Value operand) {
+        if (operand == null || !operand.constant)
+            return null;
+
+        if (operator == Opcode.INT_TO_FLOAT)
+            return operand.convert("float");
+
+        return operator == Opcode.NOT ? bool(!operand.isTrue()) : null;
+    } // method fold
+
+    private boolean isTrue() {
+        return isFloat() ? this.floatValue != 0 : this.intValue != 0;
+    } // method isTrue
+
+    private static Value bool(boolean value) {
+        return constant("boolean", value ? 1 : 0);
+    } // method bool
+
+} // class Value
\ No newline at end of file
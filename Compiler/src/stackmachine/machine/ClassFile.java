@@ -0,0 +1,447 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Writer of the JVM class files generated for compiled programs
+ *
+ * Only what the generated classes need: the constant pool, fields, and methods with a Code
+ * attribute. The class file version is 49, the last one verified without stack map frames, so
+ * the code needs no frames at its branch targets.
+ */
+class ClassFile {
+    private static final int VERSION = 49;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private ByteArrayOutputStream pool;
+    private DataOutputStream constants;
+    private Map<String, Integer> entries;
+    private int count;
+
+    private String name;
+    private ByteArrayOutputStream fieldBytes;
+    private ByteArrayOutputStream methodBytes;
+    private int fields;
+    private int methods;
+
+    private boolean closed;
+
+    ClassFile(String name) {
+        this.pool = new ByteArrayOutputStream();
+        this.constants = new DataOutputStream(this.pool);
+        this.entries = new HashMap<String, Integer>();
+        this.count = 1;
+
+        this.name = name;
+        this.fieldBytes = new ByteArrayOutputStream();
+        this.methodBytes = new ByteArrayOutputStream();
+        this.fields = 0;
+        this.methods = 0;
+    } // constructor ClassFile
+
+    // constant pool, every constant is added once
+
+    int utf8(String value) throws IOException {
+        Integer index = this.entries.get("U" + value);
+
+        if (index == null) {
+            this.constants.writeByte(1);
+            this.constants.writeUTF(value);
+            index = add("U" + value, 1);
+        }
+
+        return index;
+    } // method utf8
+
+    int classReference(String name) throws IOException {
+        return reference("C" + name, 7, utf8(name));
+    } // method classReference
+
+    int fieldReference(String owner, String name, String descriptor) throws IOException {
+        return member("F", 9, owner, name, descriptor);
+    } // method fieldReference
+
+    int methodReference(String owner, String name, String descriptor) throws IOException {
+        return member("M", 10, owner, name, descriptor);
+    } // method methodReference
+
+    int intConstant(int value) throws IOException {
+        Integer index = this.entries.get("I" + value);
+
+        if (index == null) {
+            this.constants.writeByte(3);
+            this.constants.writeInt(value);
+            index = add("I" + value, 1);
+        }
+
+        return index;
+    } // method intConstant
+
+    int longConstant(long value) throws IOException {
+        Integer index = this.entries.get("J" + value);
+
+        if (index == null) {
+            this.constants.writeByte(5);
+            this.constants.writeLong(value);
+            index = add("J" + value, 2);
+        }
+
+        return index;
+    } // method longConstant
+
+    int doubleConstant(double value) throws IOException {
+        long bits = Double.doubleToRawLongBits(value);
+        Integer index = this.entries.get("D" + bits);
+
+        if (index == null) {
+            this.constants.writeByte(6);
+            this.constants.writeLong(bits);
+            index = add("D" + bits, 2);
+        }
+
+        return index;
+    } // method doubleConstant
+
+    private int member(String kind, int tag, String owner, String name, String descriptor) throws IOException {
+        int type = nameAndType(name, descriptor);
+        int reference = classReference(owner);
+        String key = kind + owner + "." + name + ":" + descriptor;
+        Integer index = this.entries.get(key);
+
+        if (index == null) {
+            this.constants.writeByte(tag);
+            this.constants.writeShort(reference);
+            this.constants.writeShort(type);
+            index = add(key, 1);
+        }
+
+        return index;
+    } // method member
+
+    private int nameAndType(String name, String descriptor) throws IOException {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        String key = "N" + name + ":" + descriptor;
+        Integer index = this.entries.get(key);
+
+        if (index == null) {
+            this.constants.writeByte(12);
+            this.constants.writeShort(nameIndex);
+            this.constants.writeShort(descriptorIndex);
+            index = add(key, 1);
+        }
+
+        return index;
+    } // method nameAndType
+
+    private int reference(String key, int tag, int utf8) throws IOException {
+        Integer index = this.entries.get(key);
+
+        if (index == null) {
+            this.constants.writeByte(tag);
+            this.constants.writeShort(utf8);
+            index = add(key, 1);
+        }
+
+        return index;
+    } // method reference
+
+    private int add(String key, int slots) throws IOException {
+        int index = this.count;
+
+        this.entries.put(key, index);
+        this.count = this.count + slots;
+
+        if (this.count > 0xFFFF)
+            throw new IOException("the constant pool of the class is full");
+
+        return index;
+    } // method add
+
+    // members
+
+    void field(int access, String name, String descriptor) throws IOException {
+        DataOutputStream field = new DataOutputStream(this.fieldBytes);
+
+        field.writeShort(access);
+        field.writeShort(utf8(name));
+        field.writeShort(utf8(descriptor));
+        field.writeShort(0);
+        this.fields++;
+    } // method field
+
+    void method(int access, String name, String descriptor, Code code) throws IOException {
+        DataOutputStream method = new DataOutputStream(this.methodBytes);
+        byte[] bytes = code.toBytes();
+
+        method.writeShort(access);
+        method.writeShort(utf8(name));
+        method.writeShort(utf8(descriptor));
+
+        // one Code attribute with the exception table of the code and no attributes of its own
+
+        method.writeShort(1);
+        method.writeShort(utf8("Code"));
+        method.writeInt(12 + bytes.length + code.handlerCount * 8);
+        method.writeShort(code.maxStack);
+        method.writeShort(code.maxLocals);
+        method.writeInt(bytes.length);
+        method.write(bytes);
+        code.writeHandlers(method);
+        method.writeShort(0);
+        this.methods++;
+    } // method method
+
+    byte[] toBytes(String superName, String... interfaces) throws IOException {
+        if (this.closed)
+            throw new IllegalStateException("the class file is already written");
+
+        this.closed = true;
+
+        int thisClass = classReference(this.name);
+        int superClass = classReference(superName);
+        int[] interfaceIndexes = new int[interfaces.length];
+
+        for (int i = 0; i < interfaces.length; i++)
+            interfaceIndexes[i] = classReference(interfaces[i]);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        output.writeInt(0xCAFEBABE);
+        output.writeShort(0);
+        output.writeShort(VERSION);
+        output.writeShort(this.count);
+        this.pool.writeTo(output);
+
+        output.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        output.writeShort(thisClass);
+        output.writeShort(superClass);
+        output.writeShort(interfaces.length);
+
+        for (int index : interfaceIndexes)
+            output.writeShort(index);
+
+        output.writeShort(this.fields);
+        this.fieldBytes.writeTo(output);
+
+        output.writeShort(this.methods);
+        this.methodBytes.writeTo(output);
+
+        output.writeShort(0);
+        output.flush();
+
+        return bytes.toByteArray();
+    } // method toBytes
+
+    /*
+     * Bytecode of a method, with labels for the branches
+     *
+     * A branch to a label that is not placed yet keeps its position, and the offset is written
+     * when the code is finished. A handler catches every exception thrown by a range of the code.
+     */
+    static class Code {
+        static final int ACONST_NULL = 0x01;
+        static final int ICONST_0 = 0x03;
+        static final int ICONST_1 = 0x04;
+        static final int LCONST_0 = 0x09;
+        static final int LCONST_1 = 0x0a;
+        static final int DCONST_0 = 0x0e;
+        static final int DCONST_1 = 0x0f;
+        static final int SIPUSH = 0x11;
+        static final int LDC_W = 0x13;
+        static final int LDC2_W = 0x14;
+        static final int LLOAD = 0x16;
+        static final int DLOAD = 0x18;
+        static final int ALOAD = 0x19;
+        static final int LALOAD = 0x2f;
+        static final int DALOAD = 0x31;
+        static final int AALOAD = 0x32;
+        static final int LSTORE = 0x37;
+        static final int DSTORE = 0x39;
+        static final int ASTORE = 0x3a;
+        static final int LASTORE = 0x50;
+        static final int DASTORE = 0x52;
+        static final int BASTORE = 0x54;
+        static final int IADD = 0x60;
+        static final int LADD = 0x61;
+        static final int DADD = 0x63;
+        static final int LSUB = 0x65;
+        static final int DSUB = 0x67;
+        static final int LMUL = 0x69;
+        static final int DMUL = 0x6b;
+        static final int LDIV = 0x6d;
+        static final int DDIV = 0x6f;
+        static final int LREM = 0x71;
+        static final int DREM = 0x73;
+        static final int L2I = 0x88;
+        static final int L2D = 0x8a;
+        static final int LCMP = 0x94;
+        static final int DCMPL = 0x97;
+        static final int DCMPG = 0x98;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9a;
+        static final int IFLT = 0x9b;
+        static final int IFGE = 0x9c;
+        static final int IFGT = 0x9d;
+        static final int IFLE = 0x9e;
+        static final int GOTO = 0xa7;
+        static final int RETURN = 0xb1;
+        static final int GETFIELD = 0xb4;
+        static final int PUTFIELD = 0xb5;
+        static final int INVOKEVIRTUAL = 0xb6;
+        static final int INVOKESPECIAL = 0xb7;
+        static final int ATHROW = 0xbf;
+
+        private static final int WIDE = 0xc4;
+
+        private byte[] bytes;
+        private int size;
+
+        private int[] labels;
+        private int labelCount;
+
+        private int[] branches;
+        private int[] targets;
+        private int branchCount;
+
+        private int[] handlers;
+        private int handlerCount;
+
+        int maxStack;
+        int maxLocals;
+
+        Code(int maxStack, int maxLocals) {
+            this.bytes = new byte[256];
+            this.size = 0;
+            this.labels = new int[16];
+            this.labelCount = 0;
+            this.branches = new int[16];
+            this.targets = new int[16];
+            this.branchCount = 0;
+            this.handlers = new int[12];
+            this.handlerCount = 0;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        } // constructor Code
+
+        int size() {
+            return this.size;
+        } // method size
+
+        void op(int opcode) {
+            write(opcode);
+        } // method op
+
+        void op(int opcode, int operand) {
+            write(opcode);
+            write(operand >> 8);
+            write(operand);
+        } // method op
+
+        // load or store of a local, wide when the index does not fit in a byte
+
+        void local(int opcode, int index) {
+            if (index > 0xFF) {
+                write(WIDE);
+                op(opcode, index);
+            } else {
+                write(opcode);
+                write(index);
+            }
+        } // method local
+
+        int newLabel() {
+            if (this.labelCount == this.labels.length)
+                this.labels = Arrays.copyOf(this.labels, this.labelCount * 2);
+
+            this.labels[this.labelCount] = -1;
+
+            return this.labelCount++;
+        } // method newLabel
+
+        void place(int label) {
+            this.labels[label] = this.size;
+        } // method place
+
+        void jump(int opcode, int label) {
+            if (this.branchCount == this.branches.length) {
+                this.branches = Arrays.copyOf(this.branches, this.branchCount * 2);
+                this.targets = Arrays.copyOf(this.targets, this.branchCount * 2);
+            }
+
+            this.branches[this.branchCount] = this.size;
+            this.targets[this.branchCount++] = label;
+
+            op(opcode, 0);
+        } // method jump
+
+        // the code from start to end goes to the label when it throws
+
+        void handler(int start, int end, int label) {
+            if (this.handlerCount * 3 == this.handlers.length)
+                this.handlers = Arrays.copyOf(this.handlers, this.handlers.length * 2);
+
+            this.handlers[this.handlerCount * 3] = start;
+            this.handlers[this.handlerCount * 3 + 1] = end;
+            this.handlers[this.handlerCount * 3 + 2] = label;
+            this.handlerCount++;
+        } // method handler
+
+        void writeHandlers(DataOutputStream output) throws IOException {
+            output.writeShort(this.handlerCount);
+
+            for (int i = 0; i < this.handlerCount * 3; i = i + 3) {
+                if (this.labels[this.handlers[i + 2]] < 0)
+                    throw new IOException("handler at a label that is not placed");
+
+                output.writeShort(this.handlers[i]);
+                output.writeShort(this.handlers[i + 1]);
+                output.writeShort(this.labels[this.handlers[i + 2]]);
+                output.writeShort(0);
+            }
+        } // method writeHandlers
+
+        byte[] toBytes() throws IOException {
+            for (int i = 0; i < this.branchCount; i++) {
+                int target = this.labels[this.targets[i]];
+                int offset = target - this.branches[i];
+
+                if (target < 0)
+                    throw new IOException("branch to a label that is not placed");
+
+                if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                    throw new IOException("branch offset does not fit in the code");
+
+                this.bytes[this.branches[i] + 1] = (byte) (offset >> 8);
+                this.bytes[this.branches[i] + 2] = (byte) offset;
+            }
+
+            if (this.size > 0xFFFF)
+                throw new IOException("the code of the method is too large");
+
+            return Arrays.copyOf(this.bytes, this.size);
+        } // method toBytes
+
+        private void write(int value) {
+            if (this.size == this.bytes.length)
+                this.bytes = Arrays.copyOf(this.bytes, this.size * 2);
+
+            this.bytes[this.size++] = (byte) value;
+        } // method write
+
+    } // class Code
+
+} // class ClassFile
\ No newline at end of file
@@ -0,0 +1,63 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+
+/*
+ * A program compiled to a JVM class by JvmCompiler
+ *
+ * The class is loaded once, and every execution of the program is a new instance of it bound
+ * to its own execution context. A compiled loop only runs in a context that is at the label of
+ * the loop with the types in memory it was compiled for.
+ */
+public class CompiledProgram {
+    private ProgramImage image;
+    private int start;
+    private boolean[] entry;
+    private MethodHandle constructor;
+    private int codeSize;
+
+    CompiledProgram(ProgramImage image, int start, boolean[] entry, MethodHandle constructor, int codeSize) {
+        this.image = image;
+        this.start = start;
+        this.entry = entry;
+        this.constructor = constructor;
+        this.codeSize = codeSize;
+    } // constructor CompiledProgram
+
+    public ProgramImage getImage() {
+        return this.image;
+    } // method getImage
+
+    // offset of the first instruction that is compiled, 0 for the whole program
+
+    public int getStart() {
+        return this.start;
+    } // method getStart
+
+    public boolean accepts(ExecutionContext context) {
+        return context.getImage() == this.image && context.pc == this.start && context.sp == 0
+                && (this.entry == null || Arrays.equals(this.entry, context.realMemory));
+    } // method accepts
+
+    // bytes of JVM code of the method that runs the program
+
+    public int getCodeSize() {
+        return this.codeSize;
+    } // method getCodeSize
+
+    public Runnable bind(ExecutionContext context) {
+        if (!accepts(context))
+            throw new IllegalArgumentException("the context is not an execution of " + this.image.getName() + " at " + this.start);
+
+        try {
+            return (Runnable) this.constructor.invokeExact(context);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    } // method bind
+
+} // class CompiledProgram
\ No newline at end of file
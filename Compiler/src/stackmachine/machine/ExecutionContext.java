@@ -0,0 +1,178 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import stackmachine.compiler.sp3.ExecutionProfile;
+
+import java.io.PrintStream;
+import java.io.Writer;
+
+/*
+ * State of one execution of a program: the program counter, the operand stack, the memory
+ * and the output
+ *
+ * The stack and the variables keep ints and floats in separate primitive arrays, with a flag
+ * for every entry that tells which of the two holds its value. The specialized instructions of
+ * a typed program only read the array of their type, the generic instructions look at the
+ * flags. The elements of the arrays are in typed arrays, large ones outside the heap. The
+ * interpreter reads and writes the fields directly.
+ *
+ * The context also counts the jumps back to every label. When a count reaches the hot loop
+ * threshold the interpreter stops at the label, so the loop can go on compiled. The execution
+ * of a profiled image counts its blocks and branches.
+ *
+ * The trace of the context keeps its last jumps, which give back the last instructions it
+ * executed, and the position the sampler reads. The jumps also count the instructions, and the
+ * interpreter stops at the label of a loop once the count reaches the stop of the context, so a
+ * scheduler can run the context in slices.
+ */
+public class ExecutionContext {
+    private static final int OUTPUT_LIMIT = 8192;
+    private static final String NEW_LINE = System.lineSeparator();
+
+    final ProgramImage image;
+
+    int pc;
+    int sp;
+    boolean halted;
+
+    final long[] ints;
+    final double[] floats;
+    final boolean[] real;
+
+    final long[] memory;
+    final double[] floatMemory;
+    final boolean[] realMemory;
+
+    final TypedArray[] arrays;
+
+    final int[] backEdges;
+    int hotLoop;
+    long stop;
+
+    final long[] counts;
+    final Trace trace;
+
+    private StringBuilder output;
+    private PrintStream printer;
+
+    // the output goes to the printer, or stays in the context when there is no printer
+
+    public ExecutionContext(ProgramImage image, PrintStream printer) {
+        this(image, printer, Trace.SIZE);
+    } // constructor ExecutionContext
+
+    // the trace keeps the given number of jumps, rounded up to a power of 2
+
+    public ExecutionContext(ProgramImage image, PrintStream printer, int traceSize) {
+        this.image = image;
+
+        this.pc = 0;
+        this.sp = 0;
+        this.halted = false;
+
+        this.ints = new long[image.getStackSize()];
+        this.floats = new double[image.getStackSize()];
+        this.real = new boolean[image.getStackSize()];
+
+        this.memory = new long[image.getVariableCount()];
+        this.floatMemory = new double[image.getVariableCount()];
+        this.realMemory = new boolean[image.getVariableCount()];
+
+        // a float variable is 0.0 until it is assigned, every other variable is 0
+
+        for (int variable = 0; variable < image.getVariableCount(); variable++)
+            this.realMemory[variable] = "float".equals(image.getVariableType(variable));
+
+        this.arrays = new TypedArray[image.getArrayCount()];
+
+        for (int array = 0; array < image.getArrayCount(); array++)
+            this.arrays[array] = new TypedArray(image.getArrayName(array), image.getArrayType(array), image.getArrayLength(array));
+
+        this.backEdges = new int[image.getCode().length];
+        this.hotLoop = 0;
+        this.stop = Long.MAX_VALUE;
+
+        this.counts = new long[image.getCounterCount()];
+        this.trace = new Trace(this, traceSize);
+
+        this.output = new StringBuilder();
+        this.printer = printer;
+    } // constructor ExecutionContext
+
+    public ProgramImage getImage() {
+        return this.image;
+    } // method getImage
+
+    public boolean isHalted() {
+        return this.halted;
+    } // method isHalted
+
+    // jumps back to a label before the interpreter stops there, 0 when it never stops
+
+    public int getHotLoop() {
+        return this.hotLoop;
+    } // method getHotLoop
+
+    public void setHotLoop(int hotLoop) {
+        this.hotLoop = hotLoop;
+    } // method setHotLoop
+
+    // instructions the interpreter executed, with the halt of a program that halted but without
+    // the instruction of an error, for an execution that is not running
+
+    public long getInstructions() {
+        return this.trace.getInstructions(this.pc) + (this.halted ? 1 : 0);
+    } // method getInstructions
+
+    // the profile of the execution so far, null when the image is not profiled
+
+    public ExecutionProfile getProfile() {
+        if (!this.image.isProfiled())
+            return null;
+
+        return this.image.profile(this.counts, this.halted ? -1 : this.pc);
+    } // method getProfile
+
+    // offset of the last instruction the execution jumped to, or where it started
+
+    int getPosition() {
+        return this.trace.getPosition();
+    } // method getPosition
+
+    // the last instructions of an execution that is not running, up to the one it stopped at
+
+    public void writeTrace(Writer output) throws Exception {
+        this.trace.write(output, this.halted ? "halted" : "next");
+    } // method writeTrace
+
+    // the output that has not been sent to the printer
+
+    public String getOutput() {
+        return this.output.toString();
+    } // method getOutput
+
+    void print(long value) {
+        this.output.append(value).append(NEW_LINE);
+
+        if (this.output.length() > OUTPUT_LIMIT)
+            flush();
+    } // method print
+
+    void print(double value) {
+        this.output.append(value).append(NEW_LINE);
+
+        if (this.output.length() > OUTPUT_LIMIT)
+            flush();
+    } // method print
+
+    public void flush() {
+        if (this.printer != null && this.output.length() > 0) {
+            this.printer.print(this.output);
+            this.printer.flush();
+            this.output.setLength(0);
+        }
+    } // method flush
+
+} // class ExecutionContext
\ No newline at end of file
@@ -0,0 +1,130 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import stackmachine.compiler.sp3.Opcode;
+
+import java.lang.reflect.Field;
+
+/*
+ * Codes of the instructions in the code array of a decoded program
+ *
+ * The code of an instruction is the ordinal of its opcode, so a program is decoded without a
+ * table and the interpreter switches on constants. ARRAY never reaches the code array, the
+ * arrays are laid out before decoding, so an array declaration takes no room. The labels are
+ * resolved before decoding too, and LABEL is only the counter of a block of a profiled image.
+ */
+public final class Instruction {
+    public static final int PUSH_INT = 0;
+    public static final int PUSH_FLOAT = 1;
+    public static final int PUSH_ADDRESS = 2;
+    public static final int LOAD = 3;
+    public static final int STORE = 4;
+    public static final int ADD = 5;
+    public static final int SUBTRACT = 6;
+    public static final int MULTIPLY = 7;
+    public static final int DIVIDE = 8;
+    public static final int REMAINDER = 9;
+    public static final int LESS_THAN = 10;
+    public static final int LESS_EQUALS = 11;
+    public static final int GREATER_THAN = 12;
+    public static final int GREATER_EQUALS = 13;
+    public static final int EQUALS = 14;
+    public static final int NOT_EQUALS = 15;
+    public static final int AND = 16;
+    public static final int OR = 17;
+    public static final int NOT = 18;
+    public static final int PRINT = 19;
+    public static final int LABEL = 20;
+    public static final int GOTO = 21;
+    public static final int GOFALSE = 22;
+    public static final int ARRAY = 23;
+    public static final int HALT = 24;
+    public static final int LOAD_VAR = 25;
+    public static final int STORE_VAR = 26;
+    public static final int IADD = 27;
+    public static final int FADD = 28;
+    public static final int ISUBTRACT = 29;
+    public static final int FSUBTRACT = 30;
+    public static final int IMULTIPLY = 31;
+    public static final int FMULTIPLY = 32;
+    public static final int IDIVIDE = 33;
+    public static final int FDIVIDE = 34;
+    public static final int IREMAINDER = 35;
+    public static final int FREMAINDER = 36;
+    public static final int ILESS_THAN = 37;
+    public static final int FLESS_THAN = 38;
+    public static final int ILESS_EQUALS = 39;
+    public static final int FLESS_EQUALS = 40;
+    public static final int IGREATER_THAN = 41;
+    public static final int FGREATER_THAN = 42;
+    public static final int IGREATER_EQUALS = 43;
+    public static final int FGREATER_EQUALS = 44;
+    public static final int IEQUALS = 45;
+    public static final int FEQUALS = 46;
+    public static final int INOT_EQUALS = 47;
+    public static final int FNOT_EQUALS = 48;
+    public static final int INT_TO_FLOAT = 49;
+    public static final int LOAD_ELEMENT = 50;
+    public static final int STORE_ELEMENT = 51;
+    public static final int STORE_CONST = 52;
+    public static final int INCREMENT = 53;
+    public static final int GOFALSE_LESS_THAN = 54;
+    public static final int GOFALSE_LESS_EQUALS = 55;
+    public static final int GOFALSE_GREATER_THAN = 56;
+    public static final int GOFALSE_GREATER_EQUALS = 57;
+    public static final int GOFALSE_EQUALS = 58;
+    public static final int GOFALSE_NOT_EQUALS = 59;
+    public static final int IGOFALSE_LESS_THAN = 60;
+    public static final int IGOFALSE_LESS_EQUALS = 61;
+    public static final int IGOFALSE_GREATER_THAN = 62;
+    public static final int IGOFALSE_GREATER_EQUALS = 63;
+    public static final int IGOFALSE_EQUALS = 64;
+    public static final int IGOFALSE_NOT_EQUALS = 65;
+
+    static {
+
+        // every code must be the ordinal of the opcode of the same name
+
+        for (Field field : Instruction.class.getFields()) {
+            try {
+                if (Opcode.valueOf(field.getName()).ordinal() != field.getInt(null))
+                    throw new ExceptionInInitializerError("instruction " + field.getName() + " is not its opcode");
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        if (Instruction.class.getFields().length != Opcode.values().length)
+            throw new ExceptionInInitializerError("the instructions do not cover the opcodes");
+    }
+
+    private Instruction() {
+    } // constructor Instruction
+
+    // number of ints of an instruction in the code array, the code and its operands
+
+    public static int width(Opcode opcode) {
+        if (opcode == Opcode.ARRAY)
+            return 0;
+
+        switch (opcode.getOperand()) {
+            case NONE:
+                return 1;
+            case SYMBOL_INT:
+                return 3;
+            default:
+                return 2;
+        }
+    } // method width
+
+    public static int width(int code) {
+        return width(Opcode.valueOf(code));
+    } // method width
+
+    public static String name(int code) {
+        return Opcode.valueOf(code).getMnemonic();
+    } // method name
+
+} // class Instruction
\ No newline at end of file
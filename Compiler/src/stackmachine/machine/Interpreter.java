@@ -0,0 +1,545 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+/*
+ * Executes a decoded program
+ *
+ * The loop keeps the program counter and the top of the stack in locals and switches on the
+ * code of every instruction. The generic operators give an int when both operands are ints and
+ * a float otherwise, the specialized operators of a typed program work on one array only.
+ * Nothing is allocated while a program runs, apart from the output.
+ *
+ * A goto back to a label that reaches the hot loop threshold of the context returns before the
+ * program halts, with the context at the label, and so does a goto back once the instructions
+ * executed reach the stop of the context. Executing the context again goes on from there. Every
+ * loop the compiler makes goes back with a goto, so a program never runs long without reaching
+ * one.
+ *
+ * Every jump the program takes is kept in the trace of the context, with the values a
+ * conditional jump compared.
+ *
+ * A label only reaches the code of a profiled image, where it counts the executions of a block
+ * or a branch. The code of any other image never has one, so the profile costs nothing when it
+ * is off.
+ */
+public class Interpreter {
+
+    public void execute(ExecutionContext context) throws Exception {
+        ProgramImage image = context.image;
+
+        int[] code = image.getCode();
+        long[] constants = image.getInts();
+        double[] floatConstants = image.getFloats();
+
+        long[] ints = context.ints;
+        double[] floats = context.floats;
+        boolean[] real = context.real;
+
+        long[] memory = context.memory;
+        double[] floatMemory = context.floatMemory;
+        boolean[] realMemory = context.realMemory;
+        TypedArray[] arrays = context.arrays;
+
+        int[] backEdges = context.backEdges;
+        int hotLoop = context.hotLoop;
+        long stop = context.stop;
+
+        long[] counts = context.counts;
+        Trace trace = context.trace;
+
+        int pc = context.pc;
+        int sp = context.sp;
+        int address;
+        long reference;
+
+        try {
+            for (;;) {
+                switch (code[pc]) {
+                    case Instruction.PUSH_INT:
+                        ints[sp] = constants[code[pc + 1]];
+                        real[sp++] = false;
+                        pc += 2;
+                        break;
+                    case Instruction.PUSH_FLOAT:
+                        floats[sp] = floatConstants[code[pc + 1]];
+                        real[sp++] = true;
+                        pc += 2;
+                        break;
+                    case Instruction.PUSH_ADDRESS:
+                        ints[sp] = constants[code[pc + 1]];
+                        real[sp++] = false;
+                        pc += 2;
+                        break;
+                    case Instruction.LOAD:
+                        reference = ints[sp - 1];
+                        address = ProgramImage.arrayOf(reference);
+
+                        if (address == -1)
+                            load(memory, floatMemory, realMemory, ints, floats, real, (int) reference, sp - 1);
+                        else
+                            load(arrays[address], ProgramImage.indexOf(reference), ints, floats, real, sp - 1);
+
+                        pc++;
+                        break;
+                    case Instruction.STORE:
+                        reference = ints[sp - 2];
+                        address = ProgramImage.arrayOf(reference);
+                        sp = sp - 2;
+
+                        if (address == -1)
+                            store(memory, floatMemory, realMemory, ints, floats, real, (int) reference, sp + 1);
+                        else
+                            store(arrays[address], ProgramImage.indexOf(reference), ints, floats, real, sp + 1);
+
+                        pc++;
+                        break;
+                    case Instruction.LOAD_VAR:
+                        load(memory, floatMemory, realMemory, ints, floats, real, code[pc + 1], sp++);
+                        pc += 2;
+                        break;
+                    case Instruction.STORE_VAR:
+                        store(memory, floatMemory, realMemory, ints, floats, real, code[pc + 1], --sp);
+                        pc += 2;
+                        break;
+                    case Instruction.LOAD_ELEMENT:
+                        load(arrays[code[pc + 1]], ints[sp - 1], ints, floats, real, sp - 1);
+                        pc += 2;
+                        break;
+                    case Instruction.STORE_ELEMENT:
+                        sp = sp - 2;
+                        store(arrays[code[pc + 1]], ints[sp], ints, floats, real, sp + 1);
+                        pc += 2;
+                        break;
+                    case Instruction.STORE_CONST:
+                        address = code[pc + 1];
+                        memory[address] = constants[code[pc + 2]];
+                        realMemory[address] = false;
+                        pc += 3;
+                        break;
+                    case Instruction.INCREMENT:
+                        address = code[pc + 1];
+
+                        if (realMemory[address])
+                            floatMemory[address] = floatMemory[address] + constants[code[pc + 2]];
+                        else
+                            memory[address] = memory[address] + constants[code[pc + 2]];
+
+                        pc += 3;
+                        break;
+
+                    // generic operators
+
+                    case Instruction.ADD:
+                        sp--;
+
+                        if (real[sp - 1] | real[sp]) {
+                            floats[sp - 1] = number(ints, floats, real, sp - 1) + number(ints, floats, real, sp);
+                            real[sp - 1] = true;
+                        } else {
+                            ints[sp - 1] = ints[sp - 1] + ints[sp];
+                        }
+
+                        pc++;
+                        break;
+                    case Instruction.SUBTRACT:
+                        sp--;
+
+                        if (real[sp - 1] | real[sp]) {
+                            floats[sp - 1] = number(ints, floats, real, sp - 1) - number(ints, floats, real, sp);
+                            real[sp - 1] = true;
+                        } else {
+                            ints[sp - 1] = ints[sp - 1] - ints[sp];
+                        }
+
+                        pc++;
+                        break;
+                    case Instruction.MULTIPLY:
+                        sp--;
+
+                        if (real[sp - 1] | real[sp]) {
+                            floats[sp - 1] = number(ints, floats, real, sp - 1) * number(ints, floats, real, sp);
+                            real[sp - 1] = true;
+                        } else {
+                            ints[sp - 1] = ints[sp - 1] * ints[sp];
+                        }
+
+                        pc++;
+                        break;
+                    case Instruction.DIVIDE:
+                        sp--;
+
+                        if (real[sp - 1] | real[sp]) {
+                            floats[sp - 1] = number(ints, floats, real, sp - 1) / number(ints, floats, real, sp);
+                            real[sp - 1] = true;
+                        } else {
+                            ints[sp - 1] = ints[sp - 1] / ints[sp];
+                        }
+
+                        pc++;
+                        break;
+                    case Instruction.REMAINDER:
+                        sp--;
+
+                        if (real[sp - 1] | real[sp]) {
+                            floats[sp - 1] = number(ints, floats, real, sp - 1) % number(ints, floats, real, sp);
+                            real[sp - 1] = true;
+                        } else {
+                            ints[sp - 1] = ints[sp - 1] % ints[sp];
+                        }
+
+                        pc++;
+                        break;
+                    case Instruction.LESS_THAN:
+                        sp--;
+                        ints[sp - 1] = (real[sp - 1] | real[sp] ? number(ints, floats, real, sp - 1) < number(ints, floats, real, sp) : ints[sp - 1] < ints[sp]) ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.LESS_EQUALS:
+                        sp--;
+                        ints[sp - 1] = (real[sp - 1] | real[sp] ? number(ints, floats, real, sp - 1) <= number(ints, floats, real, sp) : ints[sp - 1] <= ints[sp]) ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.GREATER_THAN:
+                        sp--;
+                        ints[sp - 1] = (real[sp - 1] | real[sp] ? number(ints, floats, real, sp - 1) > number(ints, floats, real, sp) : ints[sp - 1] > ints[sp]) ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.GREATER_EQUALS:
+                        sp--;
+                        ints[sp - 1] = (real[sp - 1] | real[sp] ? number(ints, floats, real, sp - 1) >= number(ints, floats, real, sp) : ints[sp - 1] >= ints[sp]) ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.EQUALS:
+                        sp--;
+                        ints[sp - 1] = (real[sp - 1] | real[sp] ? number(ints, floats, real, sp - 1) == number(ints, floats, real, sp) : ints[sp - 1] == ints[sp]) ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.NOT_EQUALS:
+                        sp--;
+                        ints[sp - 1] = (real[sp - 1] | real[sp] ? number(ints, floats, real, sp - 1) != number(ints, floats, real, sp) : ints[sp - 1] != ints[sp]) ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.AND:
+                        sp--;
+                        ints[sp - 1] = truth(ints, floats, real, sp - 1) && truth(ints, floats, real, sp) ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.OR:
+                        sp--;
+                        ints[sp - 1] = truth(ints, floats, real, sp - 1) || truth(ints, floats, real, sp) ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.NOT:
+                        ints[sp - 1] = truth(ints, floats, real, sp - 1) ? 0 : 1;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+
+                    // operators specialized for int and float operands
+
+                    case Instruction.IADD:
+                        sp--;
+                        ints[sp - 1] = ints[sp - 1] + ints[sp];
+                        pc++;
+                        break;
+                    case Instruction.FADD:
+                        sp--;
+                        floats[sp - 1] = floats[sp - 1] + floats[sp];
+                        pc++;
+                        break;
+                    case Instruction.ISUBTRACT:
+                        sp--;
+                        ints[sp - 1] = ints[sp - 1] - ints[sp];
+                        pc++;
+                        break;
+                    case Instruction.FSUBTRACT:
+                        sp--;
+                        floats[sp - 1] = floats[sp - 1] - floats[sp];
+                        pc++;
+                        break;
+                    case Instruction.IMULTIPLY:
+                        sp--;
+                        ints[sp - 1] = ints[sp - 1] * ints[sp];
+                        pc++;
+                        break;
+                    case Instruction.FMULTIPLY:
+                        sp--;
+                        floats[sp - 1] = floats[sp - 1] * floats[sp];
+                        pc++;
+                        break;
+                    case Instruction.IDIVIDE:
+                        sp--;
+                        ints[sp - 1] = ints[sp - 1] / ints[sp];
+                        pc++;
+                        break;
+                    case Instruction.FDIVIDE:
+                        sp--;
+                        floats[sp - 1] = floats[sp - 1] / floats[sp];
+                        pc++;
+                        break;
+                    case Instruction.IREMAINDER:
+                        sp--;
+                        ints[sp - 1] = ints[sp - 1] % ints[sp];
+                        pc++;
+                        break;
+                    case Instruction.FREMAINDER:
+                        sp--;
+                        floats[sp - 1] = floats[sp - 1] % floats[sp];
+                        pc++;
+                        break;
+                    case Instruction.ILESS_THAN:
+                        sp--;
+                        ints[sp - 1] = ints[sp - 1] < ints[sp] ? 1 : 0;
+                        pc++;
+                        break;
+                    case Instruction.FLESS_THAN:
+                        sp--;
+                        ints[sp - 1] = floats[sp - 1] < floats[sp] ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.ILESS_EQUALS:
+                        sp--;
+                        ints[sp - 1] = ints[sp - 1] <= ints[sp] ? 1 : 0;
+                        pc++;
+                        break;
+                    case Instruction.FLESS_EQUALS:
+                        sp--;
+                        ints[sp - 1] = floats[sp - 1] <= floats[sp] ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.IGREATER_THAN:
+                        sp--;
+                        ints[sp - 1] = ints[sp - 1] > ints[sp] ? 1 : 0;
+                        pc++;
+                        break;
+                    case Instruction.FGREATER_THAN:
+                        sp--;
+                        ints[sp - 1] = floats[sp - 1] > floats[sp] ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.IGREATER_EQUALS:
+                        sp--;
+                        ints[sp - 1] = ints[sp - 1] >= ints[sp] ? 1 : 0;
+                        pc++;
+                        break;
+                    case Instruction.FGREATER_EQUALS:
+                        sp--;
+                        ints[sp - 1] = floats[sp - 1] >= floats[sp] ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.IEQUALS:
+                        sp--;
+                        ints[sp - 1] = ints[sp - 1] == ints[sp] ? 1 : 0;
+                        pc++;
+                        break;
+                    case Instruction.FEQUALS:
+                        sp--;
+                        ints[sp - 1] = floats[sp - 1] == floats[sp] ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.INOT_EQUALS:
+                        sp--;
+                        ints[sp - 1] = ints[sp - 1] != ints[sp] ? 1 : 0;
+                        pc++;
+                        break;
+                    case Instruction.FNOT_EQUALS:
+                        sp--;
+                        ints[sp - 1] = floats[sp - 1] != floats[sp] ? 1 : 0;
+                        real[sp - 1] = false;
+                        pc++;
+                        break;
+                    case Instruction.INT_TO_FLOAT:
+                        floats[sp - 1] = ints[sp - 1];
+                        real[sp - 1] = true;
+                        pc++;
+                        break;
+
+                    // control
+
+                    case Instruction.LABEL:
+                        counts[code[pc + 1]]++;
+                        pc += 2;
+                        break;
+                    case Instruction.GOTO:
+                        address = code[pc + 1];
+                        trace.jump(pc, address, Trace.NONE, sp);
+
+                        // the jumps back are only counted when loops are compiled, so the count
+                        // never wraps around to the threshold of a machine that only interprets
+
+                        if (address < pc && (hotLoop > 0 && ++backEdges[address] == hotLoop || trace.executed >= stop)) {
+                            context.pc = address;
+                            context.sp = sp;
+                            return;
+                        }
+
+                        pc = address;
+                        break;
+                    case Instruction.GOFALSE:
+                        sp--;
+                        pc = truth(ints, floats, real, sp) ? pc + 2 : trace.jump(pc, code[pc + 1], Trace.VALUE, sp);
+                        break;
+                    case Instruction.GOFALSE_LESS_THAN:
+                        sp = sp - 2;
+                        pc = (real[sp] | real[sp + 1] ? number(ints, floats, real, sp) < number(ints, floats, real, sp + 1) : ints[sp] < ints[sp + 1]) ? pc + 2 : trace.jump(pc, code[pc + 1], Trace.VALUES, sp);
+                        break;
+                    case Instruction.GOFALSE_LESS_EQUALS:
+                        sp = sp - 2;
+                        pc = (real[sp] | real[sp + 1] ? number(ints, floats, real, sp) <= number(ints, floats, real, sp + 1) : ints[sp] <= ints[sp + 1]) ? pc + 2 : trace.jump(pc, code[pc + 1], Trace.VALUES, sp);
+                        break;
+                    case Instruction.GOFALSE_GREATER_THAN:
+                        sp = sp - 2;
+                        pc = (real[sp] | real[sp + 1] ? number(ints, floats, real, sp) > number(ints, floats, real, sp + 1) : ints[sp] > ints[sp + 1]) ? pc + 2 : trace.jump(pc, code[pc + 1], Trace.VALUES, sp);
+                        break;
+                    case Instruction.GOFALSE_GREATER_EQUALS:
+                        sp = sp - 2;
+                        pc = (real[sp] | real[sp + 1] ? number(ints, floats, real, sp) >= number(ints, floats, real, sp + 1) : ints[sp] >= ints[sp + 1]) ? pc + 2 : trace.jump(pc, code[pc + 1], Trace.VALUES, sp);
+                        break;
+                    case Instruction.GOFALSE_EQUALS:
+                        sp = sp - 2;
+                        pc = (real[sp] | real[sp + 1] ? number(ints, floats, real, sp) == number(ints, floats, real, sp + 1) : ints[sp] == ints[sp + 1]) ? pc + 2 : trace.jump(pc, code[pc + 1], Trace.VALUES, sp);
+                        break;
+                    case Instruction.GOFALSE_NOT_EQUALS:
+                        sp = sp - 2;
+                        pc = (real[sp] | real[sp + 1] ? number(ints, floats, real, sp) != number(ints, floats, real, sp + 1) : ints[sp] != ints[sp + 1]) ? pc + 2 : trace.jump(pc, code[pc + 1], Trace.VALUES, sp);
+                        break;
+                    case Instruction.IGOFALSE_LESS_THAN:
+                        sp = sp - 2;
+                        pc = ints[sp] < ints[sp + 1] ? pc + 2 : trace.jump(pc, code[pc + 1], Trace.INTS, sp);
+                        break;
+                    case Instruction.IGOFALSE_LESS_EQUALS:
+                        sp = sp - 2;
+                        pc = ints[sp] <= ints[sp + 1] ? pc + 2 : trace.jump(pc, code[pc + 1], Trace.INTS, sp);
+                        break;
+                    case Instruction.IGOFALSE_GREATER_THAN:
+                        sp = sp - 2;
+                        pc = ints[sp] > ints[sp + 1] ? pc + 2 : trace.jump(pc, code[pc + 1], Trace.INTS, sp);
+                        break;
+                    case Instruction.IGOFALSE_GREATER_EQUALS:
+                        sp = sp - 2;
+                        pc = ints[sp] >= ints[sp + 1] ? pc + 2 : trace.jump(pc, code[pc + 1], Trace.INTS, sp);
+                        break;
+                    case Instruction.IGOFALSE_EQUALS:
+                        sp = sp - 2;
+                        pc = ints[sp] == ints[sp + 1] ? pc + 2 : trace.jump(pc, code[pc + 1], Trace.INTS, sp);
+                        break;
+                    case Instruction.IGOFALSE_NOT_EQUALS:
+                        sp = sp - 2;
+                        pc = ints[sp] != ints[sp + 1] ? pc + 2 : trace.jump(pc, code[pc + 1], Trace.INTS, sp);
+                        break;
+
+                    // output
+
+                    case Instruction.PRINT:
+                        sp--;
+
+                        if (real[sp])
+                            context.print(floats[sp]);
+                        else
+                            context.print(ints[sp]);
+
+                        pc++;
+                        break;
+                    case Instruction.HALT:
+                        context.pc = pc;
+                        context.sp = sp;
+                        context.halted = true;
+                        context.flush();
+                        return;
+                    default:
+                        throw new IllegalStateException("instruction " + Instruction.name(code[pc]) + " cannot be executed");
+                }
+            }
+        } catch (ArithmeticException | IndexOutOfBoundsException | ArrayStoreException e) {
+            context.sp = sp;
+
+            throw error(context, pc, e);
+        }
+    } // method execute
+
+    private static void load(long[] memory, double[] floatMemory, boolean[] realMemory, long[] ints, double[] floats, boolean[] real, int address, int top) {
+        if (realMemory[address]) {
+            floats[top] = floatMemory[address];
+            real[top] = true;
+        } else {
+            ints[top] = memory[address];
+            real[top] = false;
+        }
+    } // method load
+
+    private static void store(long[] memory, double[] floatMemory, boolean[] realMemory, long[] ints, double[] floats, boolean[] real, int address, int top) {
+        if (real[top]) {
+            floatMemory[address] = floats[top];
+            realMemory[address] = true;
+        } else {
+            memory[address] = ints[top];
+            realMemory[address] = false;
+        }
+    } // method store
+
+    private static void load(TypedArray array, long index, long[] ints, double[] floats, boolean[] real, int top) {
+        if (array.isReal()) {
+            floats[top] = array.getFloat(index);
+            real[top] = true;
+        } else {
+            ints[top] = array.getInt(index);
+            real[top] = false;
+        }
+    } // method load
+
+    private static void store(TypedArray array, long index, long[] ints, double[] floats, boolean[] real, int top) {
+        if (real[top])
+            array.setFloat(index, floats[top]);
+        else
+            array.setInt(index, ints[top]);
+    } // method store
+
+    private static double number(long[] ints, double[] floats, boolean[] real, int top) {
+        return real[top] ? floats[top] : ints[top];
+    } // method number
+
+    private static boolean truth(long[] ints, double[] floats, boolean[] real, int top) {
+        return real[top] ? floats[top] != 0 : ints[top] != 0;
+    } // method truth
+
+    // the error of an exception thrown by an instruction, the typed arrays give their own message
+
+    static Exception error(ExecutionContext context, int pc, RuntimeException e) {
+        if (e instanceof ArithmeticException)
+            return error(context, pc, "division by zero");
+
+        if (e instanceof ArrayIndexOutOfBoundsException)
+            return error(context, pc, "address outside the memory");
+
+        return error(context, pc, e.getMessage());
+    } // method error
+
+    // the line of the program when the code has a line table, the file and the instruction
+    // otherwise, the context stays at the instruction that failed
+
+    static Exception error(ExecutionContext context, int pc, String message) {
+        context.pc = pc;
+        context.flush();
+
+        if (context.image.getLine(pc) > 0)
+            return new Exception("\nError at line " + context.image.getLine(pc) + ": " + message);
+
+        return new Exception("\nError in " + context.image.getName() + " at '" + Instruction.name(context.image.getCode()[pc]) + "': " + message);
+    } // method error
+
+} // class Interpreter
\ No newline at end of file
@@ -0,0 +1,801 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/*
+ * Translates a decoded program into a JVM class that runs it, so HotSpot compiles the program
+ * like any other Java code
+ *
+ * Every entry of the operand stack and every variable becomes a local of the run method, and
+ * every jump a branch of the JVM. The type of every stack entry and every variable before every
+ * instruction is found first, a local holds a long for an int and a double for a float. The
+ * arrays stay in the typed arrays of the execution context.
+ *
+ * A program is not compiled when a value may be an int on one path and a float on another, or
+ * when it loads and stores through computed addresses, and the interpreter runs it instead.
+ *
+ * A loop can be compiled alone, from its label to its last goto back to the label, once the
+ * interpreter has reached it. The variables then start with the types they have in the
+ * execution context at that moment, and every jump out of the loop stores them back and
+ * returns to the interpreter at the target of the jump. An instruction that throws records
+ * its position in the context, so the error gives the line as it does in the interpreter.
+ */
+public class JvmCompiler {
+    private static final byte INT = 1;
+    private static final byte FLOAT = 2;
+    private static final byte MIXED = INT | FLOAT;
+
+    // HotSpot does not compile a method with more bytes of code
+
+    private static final int HUGE_METHOD = 8000;
+
+    private static final String CLASS = "stackmachine/machine/CompiledCode";
+    private static final String CONTEXT = "stackmachine/machine/ExecutionContext";
+    private static final String ARRAY = "stackmachine/machine/TypedArray";
+
+    // locals of the run method before the variables
+
+    private static final int CONTEXT_LOCAL = 1;
+    private static final int MEMORY_LOCAL = 2;
+    private static final int FLOAT_MEMORY_LOCAL = 3;
+    private static final int REAL_MEMORY_LOCAL = 4;
+    private static final int ARRAYS_LOCAL = 5;
+    private static final int FIRST_LOCAL = 6;
+
+    // branches of the relational operators, in the order <, <=, >, >=, ==, !=
+
+    private static final int[] JUMP_IF_TRUE = {
+            ClassFile.Code.IFLT, ClassFile.Code.IFLE, ClassFile.Code.IFGT,
+            ClassFile.Code.IFGE, ClassFile.Code.IFEQ, ClassFile.Code.IFNE };
+
+    private static final int[] JUMP_IF_FALSE = {
+            ClassFile.Code.IFGE, ClassFile.Code.IFGT, ClassFile.Code.IFLE,
+            ClassFile.Code.IFLT, ClassFile.Code.IFNE, ClassFile.Code.IFEQ };
+
+    // a comparison with NaN is false, dcmpg gives 1 and dcmpl gives -1 for NaN
+
+    private static final int[] DOUBLE_COMPARE = {
+            ClassFile.Code.DCMPG, ClassFile.Code.DCMPG, ClassFile.Code.DCMPL,
+            ClassFile.Code.DCMPL, ClassFile.Code.DCMPL, ClassFile.Code.DCMPL };
+
+    private static final int[] LONG_ARITHMETIC = {
+            ClassFile.Code.LADD, ClassFile.Code.LSUB, ClassFile.Code.LMUL, ClassFile.Code.LDIV, ClassFile.Code.LREM };
+
+    private static final int[] DOUBLE_ARITHMETIC = {
+            ClassFile.Code.DADD, ClassFile.Code.DSUB, ClassFile.Code.DMUL, ClassFile.Code.DDIV, ClassFile.Code.DREM };
+
+    private ProgramImage image;
+    private int[] code;
+
+    // the compiled part of the code, and the types in memory when it starts, null for the declarations
+
+    private int start;
+    private int end;
+    private boolean[] entry;
+
+    // types before every instruction, null when the instruction is never reached, and at every
+    // target of a jump out of the compiled part
+
+    private byte[][] stacks;
+    private byte[][] types;
+
+    private ClassFile file;
+    private ClassFile.Code run;
+    private int stackLocal;
+
+    public CompiledProgram compile(ProgramImage image) throws Exception {
+        return compile(image, 0, image.getCode().length, null);
+    } // method compile
+
+    // the loop whose label the context has reached, with the types of its memory
+
+    public CompiledProgram compileLoop(ExecutionContext context) throws Exception {
+        int[] code = context.image.getCode();
+        int end = -1;
+
+        for (int pc = context.pc; pc < code.length; pc = pc + Instruction.width(code[pc]))
+            if (code[pc] == Instruction.GOTO && code[pc + 1] == context.pc)
+                end = pc + Instruction.width(code[pc]);
+
+        if (end < 0 || context.sp != 0)
+            throw new Exception("\nError: " + context.image.getName() + " has no loop that starts at " + context.pc);
+
+        return compile(context.image, context.pc, end, context.realMemory.clone());
+    } // method compileLoop
+
+    private synchronized CompiledProgram compile(ProgramImage image, int start, int end, boolean[] entry) throws Exception {
+        this.image = image;
+        this.code = image.getCode();
+        this.start = start;
+        this.end = end;
+        this.entry = entry;
+
+        try {
+            analyze();
+
+            byte[] bytes = generate();
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class, ExecutionContext.class));
+
+            return new CompiledProgram(image, start, entry, constructor.asType(MethodType.methodType(Runnable.class, ExecutionContext.class)), this.run.size());
+        } catch (LinkageError e) {
+            throw new Exception("\nError: the class compiled from " + image.getName() + " is not valid: " + e.getMessage());
+        } finally {
+            this.stacks = null;
+            this.types = null;
+            this.entry = null;
+            this.file = null;
+            this.run = null;
+        }
+    } // method compile
+
+    // types
+
+    private void analyze() throws Exception {
+        this.stacks = new byte[this.code.length][];
+        this.types = new byte[this.code.length][];
+
+        // at the start every variable has the type of its declaration, an int if it has none, or
+        // the type it has in memory when a loop is compiled
+
+        byte[] initial = new byte[this.image.getVariableCount()];
+
+        for (int variable = 0; variable < initial.length; variable++)
+            initial[variable] = this.entry == null ? declared(variable) : this.entry[variable] ? FLOAT : INT;
+
+        Deque<Integer> pending = new ArrayDeque<Integer>();
+        byte[] stack = new byte[this.image.getStackSize()];
+
+        this.stacks[this.start] = new byte[0];
+        this.types[this.start] = initial;
+        pending.push(this.start);
+
+        while (!pending.isEmpty()) {
+            int pc = pending.pop();
+            byte[] variables = this.types[pc].clone();
+            int depth = this.stacks[pc].length;
+
+            System.arraycopy(this.stacks[pc], 0, stack, 0, depth);
+
+            int instruction = this.code[pc];
+            int next = pc + Instruction.width(instruction);
+
+            switch (instruction) {
+                case Instruction.PUSH_INT:
+                    stack[depth++] = INT;
+                    break;
+                case Instruction.PUSH_FLOAT:
+                    stack[depth++] = FLOAT;
+                    break;
+                case Instruction.PUSH_ADDRESS:
+                case Instruction.LOAD:
+                case Instruction.STORE:
+                    throw unsupported(pc, "loads and stores through computed addresses");
+                case Instruction.LOAD_VAR:
+                    stack[depth++] = use(pc, variables[this.code[pc + 1]]);
+                    break;
+                case Instruction.STORE_VAR:
+                    variables[this.code[pc + 1]] = stack[--depth];
+                    break;
+                case Instruction.LOAD_ELEMENT:
+                    index(pc, stack[depth - 1]);
+                    stack[depth - 1] = element(this.code[pc + 1]);
+                    break;
+                case Instruction.STORE_ELEMENT:
+                    index(pc, stack[depth - 2]);
+
+                    // an int becomes a float in a float array, a float only goes in a float array
+
+                    if (use(pc, stack[depth - 1]) == FLOAT && element(this.code[pc + 1]) != FLOAT)
+                        throw unsupported(pc, "a float for an array of ints");
+
+                    depth = depth - 2;
+                    break;
+                case Instruction.STORE_CONST:
+                    variables[this.code[pc + 1]] = INT;
+                    break;
+                case Instruction.INCREMENT:
+                    use(pc, variables[this.code[pc + 1]]);
+                    break;
+                case Instruction.ADD:
+                case Instruction.SUBTRACT:
+                case Instruction.MULTIPLY:
+                case Instruction.DIVIDE:
+                case Instruction.REMAINDER:
+                    depth--;
+                    stack[depth - 1] = (byte) (use(pc, stack[depth - 1]) | use(pc, stack[depth]));
+                    break;
+                case Instruction.LESS_THAN:
+                case Instruction.LESS_EQUALS:
+                case Instruction.GREATER_THAN:
+                case Instruction.GREATER_EQUALS:
+                case Instruction.EQUALS:
+                case Instruction.NOT_EQUALS:
+                case Instruction.AND:
+                case Instruction.OR:
+                    depth--;
+                    use(pc, stack[depth - 1]);
+                    use(pc, stack[depth]);
+                    stack[depth - 1] = INT;
+                    break;
+                case Instruction.NOT:
+                    use(pc, stack[depth - 1]);
+                    stack[depth - 1] = INT;
+                    break;
+                case Instruction.PRINT:
+                    use(pc, stack[--depth]);
+                    break;
+                case Instruction.INT_TO_FLOAT:
+                    require(pc, stack[depth - 1], INT);
+                    stack[depth - 1] = FLOAT;
+                    break;
+                case Instruction.GOTO:
+                    merge(pc, this.code[pc + 1], stack, depth, variables, pending);
+                    continue;
+                case Instruction.GOFALSE:
+                    use(pc, stack[--depth]);
+                    merge(pc, this.code[pc + 1], stack, depth, variables, pending);
+                    break;
+                case Instruction.HALT:
+                    for (byte type : variables)
+                        use(pc, type);
+
+                    continue;
+                default:
+                    if (isTyped(instruction)) {
+
+                        // the specialized operators, an int version and a float version of each
+
+                        byte type = (instruction - Instruction.IADD) % 2 == 0 ? INT : FLOAT;
+
+                        depth--;
+                        require(pc, stack[depth - 1], type);
+                        require(pc, stack[depth], type);
+                        stack[depth - 1] = instruction < Instruction.ILESS_THAN ? type : INT;
+                    } else if (isBranch(instruction)) {
+                        depth = depth - 2;
+
+                        if (instruction >= Instruction.IGOFALSE_LESS_THAN) {
+                            require(pc, stack[depth], INT);
+                            require(pc, stack[depth + 1], INT);
+                        } else {
+                            use(pc, stack[depth]);
+                            use(pc, stack[depth + 1]);
+                        }
+
+                        merge(pc, this.code[pc + 1], stack, depth, variables, pending);
+                    } else {
+                        throw unsupported(pc, "the instruction");
+                    }
+            }
+
+            merge(pc, next, stack, depth, variables, pending);
+        }
+    } // method analyze
+
+    private void merge(int pc, int target, byte[] stack, int depth, byte[] variables, Deque<Integer> pending) throws Exception {
+        if (!isCompiled(target) && depth > 0)
+            throw unsupported(pc, "a jump out of the loop with values on the stack");
+
+        if (this.stacks[target] == null) {
+            this.stacks[target] = Arrays.copyOf(stack, depth);
+            this.types[target] = variables.clone();
+
+            if (isCompiled(target))
+                pending.push(target);
+
+            return;
+        }
+
+        // the depth is the same on every path, the decoder checks it
+
+        boolean changed = false;
+
+        for (int i = 0; i < depth; i++) {
+            if ((this.stacks[target][i] | stack[i]) != this.stacks[target][i]) {
+                this.stacks[target][i] = (byte) (this.stacks[target][i] | stack[i]);
+                changed = true;
+            }
+        }
+
+        for (int i = 0; i < variables.length; i++) {
+            if ((this.types[target][i] | variables[i]) != this.types[target][i]) {
+                this.types[target][i] = (byte) (this.types[target][i] | variables[i]);
+                changed = true;
+            }
+        }
+
+        if (changed && isCompiled(target))
+            pending.push(target);
+    } // method merge
+
+    private boolean isCompiled(int pc) {
+        return pc >= this.start && pc < this.end;
+    } // method isCompiled
+
+    private byte declared(int variable) {
+        return "float".equals(this.image.getVariableType(variable)) ? FLOAT : INT;
+    } // method declared
+
+    // the type of the elements of an array, a boolean is an int
+
+    private byte element(int array) {
+        return "float".equals(this.image.getArrayType(array)) ? FLOAT : INT;
+    } // method element
+
+    private byte use(int pc, byte type) throws Exception {
+        if (type == MIXED)
+            throw unsupported(pc, "a value that may be an int or a float");
+
+        return type;
+    } // method use
+
+    private void require(int pc, byte type, byte required) throws Exception {
+        if (type != required)
+            throw unsupported(pc, "an operand that is not " + (required == INT ? "an int" : "a float"));
+    } // method require
+
+    private void index(int pc, byte type) throws Exception {
+        require(pc, type, INT);
+    } // method index
+
+    private Exception unsupported(int pc, String reason) {
+        String line = this.image.getLine(pc) > 0 ? " at line " + this.image.getLine(pc) : "";
+
+        return new Exception("\nError: " + this.image.getName() + " cannot be compiled" + line + ", '"
+                + Instruction.name(this.code[pc]) + "' has " + reason);
+    } // method unsupported
+
+    private static boolean isTyped(int instruction) {
+        return instruction >= Instruction.IADD && instruction <= Instruction.FNOT_EQUALS;
+    } // method isTyped
+
+    private static boolean isBranch(int instruction) {
+        return instruction >= Instruction.GOFALSE_LESS_THAN && instruction <= Instruction.IGOFALSE_NOT_EQUALS;
+    } // method isBranch
+
+    // class
+
+    private byte[] generate() throws Exception {
+        this.file = new ClassFile(CLASS);
+        this.file.field(ClassFile.ACC_PRIVATE | ClassFile.ACC_FINAL, "context", "L" + CONTEXT + ";");
+
+        ClassFile.Code constructor = new ClassFile.Code(2, 2);
+
+        constructor.local(ClassFile.Code.ALOAD, 0);
+        constructor.op(ClassFile.Code.INVOKESPECIAL, this.file.methodReference("java/lang/Object", "<init>", "()V"));
+        constructor.local(ClassFile.Code.ALOAD, 0);
+        constructor.local(ClassFile.Code.ALOAD, 1);
+        constructor.op(ClassFile.Code.PUTFIELD, this.file.fieldReference(CLASS, "context", "L" + CONTEXT + ";"));
+        constructor.op(ClassFile.Code.RETURN);
+
+        this.file.method(ClassFile.ACC_PUBLIC, "<init>", "(L" + CONTEXT + ";)V", constructor);
+
+        this.stackLocal = FIRST_LOCAL + this.image.getVariableCount() * 4;
+        this.run = new ClassFile.Code(8, this.stackLocal + this.image.getStackSize() * 4);
+
+        generateRun();
+
+        if (this.run.size() > HUGE_METHOD)
+            throw new Exception("\nError: " + this.image.getName() + " cannot be compiled, its code is larger than the JIT compiles");
+
+        this.file.method(ClassFile.ACC_PUBLIC, "run", "()V", this.run);
+
+        return this.file.toBytes("java/lang/Object", "java/lang/Runnable");
+    } // method generate
+
+    private void generateRun() throws Exception {
+        ClassFile.Code run = this.run;
+
+        run.local(ClassFile.Code.ALOAD, 0);
+        run.op(ClassFile.Code.GETFIELD, this.file.fieldReference(CLASS, "context", "L" + CONTEXT + ";"));
+        run.local(ClassFile.Code.ASTORE, CONTEXT_LOCAL);
+        contextArray("memory", "[J", MEMORY_LOCAL);
+        contextArray("floatMemory", "[D", FLOAT_MEMORY_LOCAL);
+        contextArray("realMemory", "[Z", REAL_MEMORY_LOCAL);
+        contextArray("arrays", "[L" + ARRAY + ";", ARRAYS_LOCAL);
+
+        // the variables start with the values in memory
+
+        for (int variable = 0; variable < this.image.getVariableCount(); variable++) {
+            if (this.types[this.start][variable] == INT) {
+                run.local(ClassFile.Code.ALOAD, MEMORY_LOCAL);
+                pushInt(variable);
+                run.op(ClassFile.Code.LALOAD);
+                run.local(ClassFile.Code.LSTORE, variableLocal(variable, INT));
+            } else {
+                run.local(ClassFile.Code.ALOAD, FLOAT_MEMORY_LOCAL);
+                pushInt(variable);
+                run.op(ClassFile.Code.DALOAD);
+                run.local(ClassFile.Code.DSTORE, variableLocal(variable, FLOAT));
+            }
+        }
+
+        // a label for every target of a jump, and for every instruction after the compiled part
+
+        int[] labels = new int[this.code.length];
+
+        Arrays.fill(labels, -1);
+
+        for (int pc = 0; pc < this.code.length; pc = pc + Instruction.width(this.code[pc]))
+            if (this.stacks[pc] != null && (!isCompiled(pc) || isJump(this.code[pc])) && labels[isCompiled(pc) ? this.code[pc + 1] : pc] < 0)
+                labels[isCompiled(pc) ? this.code[pc + 1] : pc] = run.newLabel();
+
+        int[] handlers = new int[this.code.length];
+
+        for (int pc = this.start; pc < this.end; pc = pc + Instruction.width(this.code[pc])) {
+            if (this.stacks[pc] == null)
+                continue;
+
+            if (labels[pc] >= 0)
+                run.place(labels[pc]);
+
+            int from = run.size();
+            int next = pc + Instruction.width(this.code[pc]);
+
+            generate(pc, labels);
+
+            if (throwsError(this.code[pc])) {
+                handlers[pc] = run.newLabel();
+                run.handler(from, run.size(), handlers[pc]);
+            }
+
+            if (!isCompiled(next) && this.code[pc] != Instruction.GOTO && this.code[pc] != Instruction.HALT)
+                run.jump(ClassFile.Code.GOTO, labels[next]);
+        }
+
+        // the jumps out of the compiled part go back to the interpreter
+
+        for (int pc = 0; pc < this.code.length; pc++) {
+            if (this.stacks[pc] != null && !isCompiled(pc)) {
+                run.place(labels[pc]);
+
+                for (byte type : this.types[pc])
+                    use(pc, type);
+
+                leave(pc, this.types[pc], false);
+            }
+        }
+
+        // an error records the instruction that throws it
+
+        for (int pc = this.start; pc < this.end; pc++) {
+            if (this.stacks[pc] != null && throwsError(this.code[pc])) {
+                run.place(handlers[pc]);
+                run.local(ClassFile.Code.ALOAD, CONTEXT_LOCAL);
+                pushInt(pc);
+                run.op(ClassFile.Code.PUTFIELD, this.file.fieldReference(CONTEXT, "pc", "I"));
+                run.op(ClassFile.Code.ATHROW);
+            }
+        }
+    } // method generateRun
+
+    private static boolean throwsError(int instruction) {
+        return instruction == Instruction.DIVIDE || instruction == Instruction.REMAINDER
+                || instruction == Instruction.IDIVIDE || instruction == Instruction.IREMAINDER
+                || instruction == Instruction.LOAD_ELEMENT || instruction == Instruction.STORE_ELEMENT;
+    } // method throwsError
+
+    private void contextArray(String name, String descriptor, int local) throws Exception {
+        this.run.local(ClassFile.Code.ALOAD, CONTEXT_LOCAL);
+        this.run.op(ClassFile.Code.GETFIELD, this.file.fieldReference(CONTEXT, name, descriptor));
+        this.run.local(ClassFile.Code.ASTORE, local);
+    } // method contextArray
+
+    private static boolean isJump(int instruction) {
+        return instruction == Instruction.GOTO || instruction == Instruction.GOFALSE || isBranch(instruction);
+    } // method isJump
+
+    private void generate(int pc, int[] labels) throws Exception {
+        ClassFile.Code run = this.run;
+        byte[] stack = this.stacks[pc];
+        byte[] variables = this.types[pc];
+        int depth = stack.length;
+        int instruction = this.code[pc];
+
+        switch (instruction) {
+            case Instruction.PUSH_INT:
+                pushLong(this.image.getInts()[this.code[pc + 1]]);
+                run.local(ClassFile.Code.LSTORE, stackLocal(depth, INT));
+                break;
+            case Instruction.PUSH_FLOAT:
+                pushDouble(this.image.getFloats()[this.code[pc + 1]]);
+                run.local(ClassFile.Code.DSTORE, stackLocal(depth, FLOAT));
+                break;
+            case Instruction.LOAD_VAR: {
+                int variable = this.code[pc + 1];
+                byte type = variables[variable];
+
+                run.local(type == INT ? ClassFile.Code.LLOAD : ClassFile.Code.DLOAD, variableLocal(variable, type));
+                run.local(type == INT ? ClassFile.Code.LSTORE : ClassFile.Code.DSTORE, stackLocal(depth, type));
+                break;
+            }
+            case Instruction.STORE_VAR: {
+                int variable = this.code[pc + 1];
+                byte type = stack[depth - 1];
+
+                load(depth - 1, type);
+                run.local(type == INT ? ClassFile.Code.LSTORE : ClassFile.Code.DSTORE, variableLocal(variable, type));
+                break;
+            }
+            case Instruction.LOAD_ELEMENT: {
+                byte type = element(this.code[pc + 1]);
+
+                array(this.code[pc + 1]);
+                load(depth - 1, INT);
+                run.op(ClassFile.Code.INVOKEVIRTUAL, this.file.methodReference(ARRAY, type == INT ? "getInt" : "getFloat", type == INT ? "(J)J" : "(J)D"));
+                run.local(type == INT ? ClassFile.Code.LSTORE : ClassFile.Code.DSTORE, stackLocal(depth - 1, type));
+                break;
+            }
+            case Instruction.STORE_ELEMENT: {
+                byte type = stack[depth - 1];
+
+                array(this.code[pc + 1]);
+                load(depth - 2, INT);
+                load(depth - 1, type);
+                run.op(ClassFile.Code.INVOKEVIRTUAL, this.file.methodReference(ARRAY, type == INT ? "setInt" : "setFloat", type == INT ? "(JJ)V" : "(JD)V"));
+                break;
+            }
+            case Instruction.STORE_CONST:
+                pushLong(this.image.getInts()[this.code[pc + 2]]);
+                run.local(ClassFile.Code.LSTORE, variableLocal(this.code[pc + 1], INT));
+                break;
+            case Instruction.INCREMENT: {
+                int variable = this.code[pc + 1];
+                long constant = this.image.getInts()[this.code[pc + 2]];
+
+                if (variables[variable] == INT) {
+                    run.local(ClassFile.Code.LLOAD, variableLocal(variable, INT));
+                    pushLong(constant);
+                    run.op(ClassFile.Code.LADD);
+                    run.local(ClassFile.Code.LSTORE, variableLocal(variable, INT));
+                } else {
+                    run.local(ClassFile.Code.DLOAD, variableLocal(variable, FLOAT));
+                    pushDouble(constant);
+                    run.op(ClassFile.Code.DADD);
+                    run.local(ClassFile.Code.DSTORE, variableLocal(variable, FLOAT));
+                }
+
+                break;
+            }
+            case Instruction.ADD:
+            case Instruction.SUBTRACT:
+            case Instruction.MULTIPLY:
+            case Instruction.DIVIDE:
+            case Instruction.REMAINDER:
+                arithmetic(instruction - Instruction.ADD, depth - 2, stack[depth - 2], stack[depth - 1]);
+                break;
+            case Instruction.LESS_THAN:
+            case Instruction.LESS_EQUALS:
+            case Instruction.GREATER_THAN:
+            case Instruction.GREATER_EQUALS:
+            case Instruction.EQUALS:
+            case Instruction.NOT_EQUALS: {
+                int relation = instruction - Instruction.LESS_THAN;
+
+                compare(relation, depth - 2, stack[depth - 2], stack[depth - 1]);
+                condition(JUMP_IF_TRUE[relation], depth - 2);
+                break;
+            }
+            case Instruction.AND:
+            case Instruction.OR: {
+                int decided = run.newLabel();
+                int end = run.newLabel();
+
+                // && is false as soon as an operand is false, || is true as soon as an operand is true
+
+                int jump = instruction == Instruction.AND ? ClassFile.Code.IFEQ : ClassFile.Code.IFNE;
+
+                truth(depth - 2, stack[depth - 2]);
+                run.jump(jump, decided);
+                truth(depth - 1, stack[depth - 1]);
+                run.jump(jump, decided);
+                run.op(instruction == Instruction.AND ? ClassFile.Code.LCONST_1 : ClassFile.Code.LCONST_0);
+                run.jump(ClassFile.Code.GOTO, end);
+                run.place(decided);
+                run.op(instruction == Instruction.AND ? ClassFile.Code.LCONST_0 : ClassFile.Code.LCONST_1);
+                run.place(end);
+                run.local(ClassFile.Code.LSTORE, stackLocal(depth - 2, INT));
+                break;
+            }
+            case Instruction.NOT:
+                truth(depth - 1, stack[depth - 1]);
+                condition(ClassFile.Code.IFEQ, depth - 1);
+                break;
+            case Instruction.PRINT: {
+                byte type = stack[depth - 1];
+
+                run.local(ClassFile.Code.ALOAD, CONTEXT_LOCAL);
+                load(depth - 1, type);
+                run.op(ClassFile.Code.INVOKEVIRTUAL, this.file.methodReference(CONTEXT, "print", type == INT ? "(J)V" : "(D)V"));
+                break;
+            }
+            case Instruction.INT_TO_FLOAT:
+                loadDouble(depth - 1, INT);
+                run.local(ClassFile.Code.DSTORE, stackLocal(depth - 1, FLOAT));
+                break;
+            case Instruction.GOTO:
+                run.jump(ClassFile.Code.GOTO, labels[this.code[pc + 1]]);
+                break;
+            case Instruction.GOFALSE:
+                truth(depth - 1, stack[depth - 1]);
+                run.jump(ClassFile.Code.IFEQ, labels[this.code[pc + 1]]);
+                break;
+            case Instruction.HALT:
+                leave(pc, variables, true);
+                break;
+            default:
+                if (isTyped(instruction)) {
+                    int operator = (instruction - Instruction.IADD) / 2;
+
+                    if (instruction < Instruction.ILESS_THAN) {
+                        arithmetic(operator, depth - 2, stack[depth - 2], stack[depth - 1]);
+                    } else {
+                        compare(operator - 5, depth - 2, stack[depth - 2], stack[depth - 1]);
+                        condition(JUMP_IF_TRUE[operator - 5], depth - 2);
+                    }
+                } else {
+                    int relation = (instruction - Instruction.GOFALSE_LESS_THAN) % 6;
+
+                    compare(relation, depth - 2, stack[depth - 2], stack[depth - 1]);
+                    run.jump(JUMP_IF_FALSE[relation], labels[this.code[pc + 1]]);
+                }
+        }
+    } // method generate
+
+    // the variables go back to memory, and the context records where the program stopped or
+    // where the interpreter goes on
+
+    private void leave(int pc, byte[] variables, boolean halted) throws Exception {
+        ClassFile.Code run = this.run;
+
+        for (int variable = 0; variable < this.image.getVariableCount(); variable++) {
+            boolean real = variables[variable] == FLOAT;
+
+            run.local(ClassFile.Code.ALOAD, real ? FLOAT_MEMORY_LOCAL : MEMORY_LOCAL);
+            pushInt(variable);
+            run.local(real ? ClassFile.Code.DLOAD : ClassFile.Code.LLOAD, variableLocal(variable, variables[variable]));
+            run.op(real ? ClassFile.Code.DASTORE : ClassFile.Code.LASTORE);
+
+            run.local(ClassFile.Code.ALOAD, REAL_MEMORY_LOCAL);
+            pushInt(variable);
+            run.op(real ? ClassFile.Code.ICONST_1 : ClassFile.Code.ICONST_0);
+            run.op(ClassFile.Code.BASTORE);
+        }
+
+        run.local(ClassFile.Code.ALOAD, CONTEXT_LOCAL);
+        pushInt(pc);
+        run.op(ClassFile.Code.PUTFIELD, this.file.fieldReference(CONTEXT, "pc", "I"));
+        run.local(ClassFile.Code.ALOAD, CONTEXT_LOCAL);
+        run.op(ClassFile.Code.ICONST_0);
+        run.op(ClassFile.Code.PUTFIELD, this.file.fieldReference(CONTEXT, "sp", "I"));
+
+        if (halted) {
+            run.local(ClassFile.Code.ALOAD, CONTEXT_LOCAL);
+            run.op(ClassFile.Code.ICONST_1);
+            run.op(ClassFile.Code.PUTFIELD, this.file.fieldReference(CONTEXT, "halted", "Z"));
+        }
+
+        run.op(ClassFile.Code.RETURN);
+    } // method leave
+
+    private void arithmetic(int operator, int left, byte leftType, byte rightType) {
+        if (leftType == INT && rightType == INT) {
+            load(left, INT);
+            load(left + 1, INT);
+            this.run.op(LONG_ARITHMETIC[operator]);
+            this.run.local(ClassFile.Code.LSTORE, stackLocal(left, INT));
+        } else {
+            loadDouble(left, leftType);
+            loadDouble(left + 1, rightType);
+            this.run.op(DOUBLE_ARITHMETIC[operator]);
+            this.run.local(ClassFile.Code.DSTORE, stackLocal(left, FLOAT));
+        }
+    } // method arithmetic
+
+    // leaves on the JVM stack an int that is compared with 0 by the branches of the relation
+
+    private void compare(int relation, int left, byte leftType, byte rightType) {
+        if (leftType == INT && rightType == INT) {
+            load(left, INT);
+            load(left + 1, INT);
+            this.run.op(ClassFile.Code.LCMP);
+        } else {
+            loadDouble(left, leftType);
+            loadDouble(left + 1, rightType);
+            this.run.op(DOUBLE_COMPARE[relation]);
+        }
+    } // method compare
+
+    // leaves on the JVM stack an int that is 0 when the value is false
+
+    private void truth(int entry, byte type) {
+        if (type == INT) {
+            load(entry, INT);
+            this.run.op(ClassFile.Code.LCONST_0);
+            this.run.op(ClassFile.Code.LCMP);
+        } else {
+            load(entry, FLOAT);
+            this.run.op(ClassFile.Code.DCONST_0);
+            this.run.op(ClassFile.Code.DCMPL);
+        }
+    } // method truth
+
+    // stores 1 in the entry of the stack when the branch is taken and 0 otherwise
+
+    private void condition(int jump, int entry) {
+        int taken = this.run.newLabel();
+        int end = this.run.newLabel();
+
+        this.run.jump(jump, taken);
+        this.run.op(ClassFile.Code.LCONST_0);
+        this.run.jump(ClassFile.Code.GOTO, end);
+        this.run.place(taken);
+        this.run.op(ClassFile.Code.LCONST_1);
+        this.run.place(end);
+        this.run.local(ClassFile.Code.LSTORE, stackLocal(entry, INT));
+    } // method condition
+
+    // the typed array on the JVM stack
+
+    private void array(int array) throws Exception {
+        this.run.local(ClassFile.Code.ALOAD, ARRAYS_LOCAL);
+        pushInt(array);
+        this.run.op(ClassFile.Code.AALOAD);
+    } // method array
+
+    private void load(int entry, byte type) {
+        this.run.local(type == INT ? ClassFile.Code.LLOAD : ClassFile.Code.DLOAD, stackLocal(entry, type));
+    } // method load
+
+    private void loadDouble(int entry, byte type) {
+        load(entry, type);
+
+        if (type == INT)
+            this.run.op(ClassFile.Code.L2D);
+    } // method loadDouble
+
+    private void pushInt(int value) throws Exception {
+        if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+            this.run.op(ClassFile.Code.SIPUSH, value);
+        else
+            this.run.op(ClassFile.Code.LDC_W, this.file.intConstant(value));
+    } // method pushInt
+
+    private void pushLong(long value) throws Exception {
+        if (value == 0)
+            this.run.op(ClassFile.Code.LCONST_0);
+        else if (value == 1)
+            this.run.op(ClassFile.Code.LCONST_1);
+        else
+            this.run.op(ClassFile.Code.LDC2_W, this.file.longConstant(value));
+    } // method pushLong
+
+    private void pushDouble(double value) throws Exception {
+        if (Double.doubleToRawLongBits(value) == 0)
+            this.run.op(ClassFile.Code.DCONST_0);
+        else if (value == 1.0)
+            this.run.op(ClassFile.Code.DCONST_1);
+        else
+            this.run.op(ClassFile.Code.LDC2_W, this.file.doubleConstant(value));
+    } // method pushDouble
+
+    // every entry of the stack and every variable has a long local and a double local
+
+    private int stackLocal(int entry, byte type) {
+        return this.stackLocal + entry * 4 + (type == INT ? 0 : 2);
+    } // method stackLocal
+
+    private static int variableLocal(int variable, byte type) {
+        return FIRST_LOCAL + variable * 4 + (type == INT ? 0 : 2);
+    } // method variableLocal
+
+} // class JvmCompiler
\ No newline at end of file
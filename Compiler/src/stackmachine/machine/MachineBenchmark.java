@@ -0,0 +1,128 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Time to load and time to run stack machine programs
+ *
+ * The programs are the files given as arguments, or the sm files of the current directory and
+ * a generated loop that runs long enough to measure the execution alone. Every program is
+ * loaded once and run by the interpreter alone, by the interpreter with its hot loops compiled,
+ * and by its compiled class, and its output is discarded.
+ */
+public class MachineBenchmark {
+    private static final int WARMUP = 200;
+    private static final int RUNS = 1000;
+
+    public static void main(String[] args) {
+
+        try {
+
+            List<Path> programs = new ArrayList<Path>();
+
+            if (args.length > 0) {
+                for (String arg : args)
+                    programs.add(Path.of(arg));
+            } else {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(Path.of("."), "*sm *.txt")) {
+                    for (Path file : files)
+                        programs.add(file);
+                }
+
+                programs.sort(null);
+
+                Path loop = Files.createTempFile("loop", ".txt");
+                loop.toFile().deleteOnExit();
+
+                Files.write(loop, generate(100000).getBytes(StandardCharsets.UTF_8));
+                programs.add(loop);
+            }
+
+            PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+            StackMachine interpreted = new StackMachine(discard);
+            StackMachine tiered = new StackMachine(discard);
+            StackMachine compiled = new StackMachine(discard);
+
+            interpreted.setHotLoop(0);
+            compiled.setCompiled(true);
+
+            System.out.printf("%-36s %10s %12s %12s %12s %9s%n", "program", "load (us)", "interpreted", "tiered", "compiled", "speedup");
+
+            for (Path program : programs) {
+                long load = System.nanoTime();
+                ProgramImage image = ProgramImage.load(program.toString());
+
+                load = System.nanoTime() - load;
+
+                long interpretedTime = time(interpreted, image);
+                long tieredTime = time(tiered, image);
+                String compiledTime = "-";
+                String speedup = "-";
+
+                try {
+                    new JvmCompiler().compile(image);
+
+                    long time = time(compiled, image);
+
+                    compiledTime = String.format("%.1f", time / 1e3);
+                    speedup = String.format("%.1fx", (double) interpretedTime / time);
+                } catch (Exception e) {
+                    System.out.println(e.getMessage().trim());
+                }
+
+                System.out.printf("%-36s %10.1f %12.1f %12.1f %12s %9s%n", program.getFileName(), load / 1e3, interpretedTime / 1e3, tieredTime / 1e3, compiledTime, speedup);
+            }
+
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        }
+    } // method main
+
+    // best time of a run in nanoseconds
+
+    private static long time(StackMachine machine, ProgramImage image) throws Exception {
+        for (int i = 0; i < WARMUP; i++)
+            machine.run(image);
+
+        long best = Long.MAX_VALUE;
+
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+
+            machine.run(image);
+
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return best;
+    } // method time
+
+    // a loop in the style of the sm files that adds the squares of the numbers below the count
+
+    private static String generate(int count) {
+        StringBuilder program = new StringBuilder();
+
+        program.append("push i\npush 0\nstore\n");
+        program.append("push sum\npush 0\nstore\n");
+        program.append("label 0:\n");
+        program.append("push i\nload\npush ").append(count).append("\n<\ngofalse label 1\n");
+        program.append("push sum\npush sum\nload\npush i\nload\npush i\nload\n*\n+\nstore\n");
+        program.append("push i\npush i\nload\npush 1\n+\nstore\n");
+        program.append("goto label 0\n");
+        program.append("label 1:\n");
+        program.append("push sum\nload\nprint\nhalt\n");
+
+        return program.toString();
+    } // method generate
+
+} // class MachineBenchmark
\ No newline at end of file
@@ -0,0 +1,503 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import stackmachine.compiler.sp3.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * A program decoded for the interpreter
+ *
+ * Every instruction is its code followed by its operands in one int array: the index of a
+ * constant in the int or float pool, the number of a variable or of an array, or the offset in
+ * the code array of the instruction a jump goes to. The variables are numbered in the order of
+ * their addresses in the layout of the program, and so are the arrays, whose elements are kept
+ * apart in typed arrays. The address a push puts on the stack is a reference: the number of a
+ * variable, or the number of an array above 32 bits plus the index of an element. The depth of
+ * the stack before every instruction is checked while decoding, so the interpreter never checks
+ * the stack, and the image keeps that depth for the trace of an error and knows the largest.
+ *
+ * A profiled image counts its executions. A label instruction, which a resolved program does not
+ * have otherwise, adds one to a counter: one before every block, at the start of the program,
+ * at every jump target and after every jump and halt, and one after every conditional jump, that
+ * counts the times it did not jump. The counts of the blocks give the count of every instruction,
+ * so the interpreter only pays for the profile at the start of a block.
+ *
+ * An image is never changed by the interpreter and can be shared by many executions.
+ */
+public class ProgramImage {
+    private String name;
+
+    private int[] code;
+    private long[] ints;
+    private double[] floats;
+    private int[] lines;
+    private int[] depths;
+    private int[] steps;
+
+    private String[] variableTypes;
+
+    private String[] arrayNames;
+    private String[] arrayTypes;
+    private int[] arrayLengths;
+
+    private int stackSize;
+
+    // the labels the code kept by the offset they jump to, and the counters of a profiled image
+
+    private Map<Integer, Long> labels;
+    private int counters;
+
+    private ProgramImage(String name) {
+        this.name = name;
+    } // constructor ProgramImage
+
+    public String getName() {
+        return this.name;
+    } // method getName
+
+    public int[] getCode() {
+        return this.code;
+    } // method getCode
+
+    public long[] getInts() {
+        return this.ints;
+    } // method getInts
+
+    public double[] getFloats() {
+        return this.floats;
+    } // method getFloats
+
+    public int getStackSize() {
+        return this.stackSize;
+    } // method getStackSize
+
+    public int getVariableCount() {
+        return this.variableTypes.length;
+    } // method getVariableCount
+
+    // declared type of the variable, null if it is not known
+
+    public String getVariableType(int variable) {
+        return this.variableTypes[variable];
+    } // method getVariableType
+
+    public int getArrayCount() {
+        return this.arrayNames.length;
+    } // method getArrayCount
+
+    public String getArrayName(int array) {
+        return this.arrayNames[array];
+    } // method getArrayName
+
+    public String getArrayType(int array) {
+        return this.arrayTypes[array];
+    } // method getArrayType
+
+    public int getArrayLength(int array) {
+        return this.arrayLengths[array];
+    } // method getArrayLength
+
+    // references to variables and to the elements of arrays, an index outside its array stays a
+    // reference to that array so the error names it
+
+    static long reference(int array, long index) {
+        return ((long) (array + 1) << 32) + index;
+    } // method reference
+
+    static int arrayOf(long reference) {
+        return (int) ((reference + (1L << 31)) >> 32) - 1;
+    } // method arrayOf
+
+    static long indexOf(long reference) {
+        return reference - ((long) (arrayOf(reference) + 1) << 32);
+    } // method indexOf
+
+    // number of the label at the offset, -1 if it is not known
+
+    public long getLabel(int offset) {
+        return this.labels.getOrDefault(offset, -1L);
+    } // method getLabel
+
+    public boolean isProfiled() {
+        return this.counters > 0;
+    } // method isProfiled
+
+    public int getCounterCount() {
+        return this.counters;
+    } // method getCounterCount
+
+    // line of the program of the instruction at the offset, 0 if it is not known
+
+    public int getLine(int offset) {
+        return this.lines[offset];
+    } // method getLine
+
+    // depth of the stack before the instruction at the offset, -1 if it is never reached
+
+    int getDepth(int offset) {
+        return this.depths[offset];
+    } // method getDepth
+
+    // instructions before every offset, and at the end the instructions of the code, the
+    // counters of a profiled image are not instructions
+
+    int[] getSteps() {
+        return this.steps;
+    } // method getSteps
+
+    // reads a text or binary program and prepares it for the interpreter, the file is mapped in
+    // memory and decoded in place, without a stream or a string for every line
+
+    public static ProgramImage load(String fileName) throws Exception {
+        return load(fileName, false);
+    } // method load
+
+    public static ProgramImage load(String fileName, boolean profiled) throws Exception {
+        StackMachineCode code;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (isBinary(file))
+                code = new BytecodeLoader().load(file);
+            else
+                code = StackMachineCode.parse(file);
+        }
+
+        return decode(fileName, prepare(code), profiled);
+    } // method load
+
+    private static boolean isBinary(ByteBuffer file) {
+        byte[] magic = new byte[BytecodeWriter.MAGIC.length];
+
+        if (file.remaining() < magic.length)
+            return false;
+
+        file.duplicate().get(magic);
+
+        return Arrays.equals(magic, BytecodeWriter.MAGIC);
+    } // method isBinary
+
+    // the passes of the compiler that a program written by hand or by an older compiler has not
+    // been through: the memory layout, the superinstructions and the resolution of the labels,
+    // which keeps the labels in a table to name the blocks and loops of the profiles
+
+    public static StackMachineCode prepare(StackMachineCode code) throws Exception {
+        if (code.isResolved())
+            return code.hasLayout() ? code : new SlotAllocator().layout(code);
+
+        if (!code.hasLayout())
+            code = new SlotAllocator().allocate(code);
+
+        return new LabelResolver(true).resolve(new InstructionFuser().fuse(code));
+    } // method prepare
+
+    public static ProgramImage decode(String name, StackMachineCode code) throws Exception {
+        return decode(name, code, false);
+    } // method decode
+
+    public static ProgramImage decode(String name, StackMachineCode code, boolean profiled) throws Exception {
+        if (!code.hasLayout() || !code.isResolved())
+            throw new Exception("\nError: the program must have a memory layout and resolved labels");
+
+        ProgramImage image = new ProgramImage(name);
+
+        // the variables and the arrays are numbered in the order of their addresses, the
+        // symbols at the same address are the same variable
+
+        TreeMap<Integer, Integer> variables = new TreeMap<Integer, Integer>();
+        TreeMap<Integer, Integer> arrays = new TreeMap<Integer, Integer>();
+
+        for (int symbol = 0; symbol < code.getSymbolCount(); symbol++) {
+            int address = code.getAddress(symbol);
+            int length = code.isArray(symbol) ? code.getArraySize(symbol) : 1;
+
+            if (address < 0 || (long) address + length > code.getMemorySize())
+                throw new Exception("\nError: '" + code.getName(symbol) + "' is outside the memory of the program");
+
+            (code.isArray(symbol) ? arrays : variables).put(address, symbol);
+        }
+
+        Map<Integer, Integer> variableNumbers = new HashMap<Integer, Integer>();
+        Map<Integer, Integer> arrayNumbers = new HashMap<Integer, Integer>();
+
+        image.variableTypes = new String[variables.size()];
+        image.arrayNames = new String[arrays.size()];
+        image.arrayTypes = new String[arrays.size()];
+        image.arrayLengths = new int[arrays.size()];
+
+        for (Map.Entry<Integer, Integer> variable : variables.entrySet()) {
+            image.variableTypes[variableNumbers.size()] = code.getType(variable.getValue());
+            variableNumbers.put(variable.getKey(), variableNumbers.size());
+        }
+
+        for (Map.Entry<Integer, Integer> array : arrays.entrySet()) {
+            image.arrayNames[arrayNumbers.size()] = code.getName(array.getValue());
+            image.arrayTypes[arrayNumbers.size()] = code.getType(array.getValue());
+            image.arrayLengths[arrayNumbers.size()] = code.getArraySize(array.getValue());
+            arrayNumbers.put(array.getKey(), arrayNumbers.size());
+        }
+
+        int[] numbers = new int[code.getSymbolCount()];
+
+        for (int symbol = 0; symbol < code.getSymbolCount(); symbol++)
+            numbers[symbol] = (code.isArray(symbol) ? arrayNumbers : variableNumbers).get(code.getAddress(symbol));
+
+        // the instructions that start a block and the conditional jumps of a profiled image, an
+        // array declaration takes no room so its block starts with the next instruction
+
+        boolean[] blocks = new boolean[code.size() + 1];
+        boolean[] branches = new boolean[code.size()];
+
+        if (profiled) {
+            blocks[0] = true;
+
+            for (int i = 0; i < code.size(); i++) {
+                Opcode opcode = code.getOpcode(i);
+
+                if (opcode.getOperand() == Opcode.Operand.LABEL) {
+                    if (code.getOperand(i) >= 0 && code.getOperand(i) <= code.size())
+                        blocks[(int) code.getOperand(i)] = true;
+
+                    blocks[i + 1] = true;
+                    branches[i] = opcode != Opcode.GOTO;
+                } else if (opcode == Opcode.HALT) {
+                    blocks[i + 1] = true;
+                }
+            }
+
+            for (int i = 0; i < code.size(); i++) {
+                if (blocks[i] && code.getOpcode(i) == Opcode.ARRAY) {
+                    blocks[i] = false;
+                    blocks[i + 1] = true;
+                }
+            }
+        }
+
+        // offset of every instruction, or of the counter of its block, and of the halt added at
+        // the end of the code for the programs that do not end with one
+
+        int[] offsets = new int[code.size() + 1];
+        int size = 0;
+
+        for (int i = 0; i < code.size(); i++) {
+            offsets[i] = size;
+            size = size + (blocks[i] ? 2 : 0) + Instruction.width(code.getOpcode(i)) + (branches[i] ? 2 : 0);
+        }
+
+        offsets[code.size()] = size;
+
+        image.labels = new HashMap<Integer, Long>();
+
+        for (Map.Entry<Long, Integer> label : code.getLabelTable().entrySet())
+            if (label.getValue() >= 0 && label.getValue() <= code.size())
+                image.labels.merge(offsets[label.getValue()], label.getKey(), Math::min);
+
+        int end = blocks[code.size()] ? size + 2 : size;
+        int[] program = new int[end + 1];
+        long[] ints = new long[code.size()];
+        double[] floats = new double[code.size()];
+        int intCount = 0;
+        int floatCount = 0;
+
+        image.lines = new int[program.length];
+        image.depths = new int[program.length];
+
+        int[] depths = stackDepths(code);
+
+        for (int i = 0; i < code.size(); i++) {
+            Opcode opcode = code.getOpcode(i);
+            int offset = offsets[i];
+
+            if (blocks[i])
+                offset = count(image, program, offset, code.getLine(i));
+
+            if (opcode == Opcode.ARRAY)
+                continue;
+
+            image.depths[offset] = depths[i];
+
+            program[offset] = opcode.ordinal();
+            image.lines[offset] = code.getLine(i);
+
+            switch (opcode.getOperand()) {
+                case INT:
+                    ints[intCount] = code.getOperand(i);
+                    program[offset + 1] = intCount++;
+                    break;
+                case FLOAT:
+                    floats[floatCount] = code.getFloat(i);
+                    program[offset + 1] = floatCount++;
+                    break;
+                case SYMBOL:
+                    int symbol = (int) code.getOperand(i);
+
+                    if (opcode == Opcode.PUSH_ADDRESS) {
+                        ints[intCount] = code.isArray(symbol) ? reference(numbers[symbol], 0) : numbers[symbol];
+                        program[offset + 1] = intCount++;
+                    } else {
+                        program[offset + 1] = number(code, i, numbers, opcode == Opcode.LOAD_ELEMENT || opcode == Opcode.STORE_ELEMENT);
+                    }
+
+                    break;
+                case SYMBOL_INT:
+                    ints[intCount] = code.getConstant(i);
+                    program[offset + 1] = number(code, i, numbers, false);
+                    program[offset + 2] = intCount++;
+                    break;
+                case LABEL:
+                    if (code.getOperand(i) < 0 || code.getOperand(i) > code.size())
+                        throw new Exception("\nError at line " + code.getLine(i) + ": jump to instruction " + code.getOperand(i) + " is outside the program");
+
+                    program[offset + 1] = offsets[(int) code.getOperand(i)];
+
+                    if (branches[i])
+                        count(image, program, offset + 2, code.getLine(i));
+
+                    break;
+                default:
+            }
+        }
+
+        int line = code.size() > 0 ? code.getLine(code.size() - 1) : 0;
+
+        if (blocks[code.size()])
+            count(image, program, size, line);
+
+        program[end] = Instruction.HALT;
+        image.lines[end] = line;
+        image.depths[end] = depths[code.size()];
+
+        image.code = program;
+        image.steps = steps(program);
+        image.ints = Arrays.copyOf(ints, intCount);
+        image.floats = Arrays.copyOf(floats, floatCount);
+        image.stackSize = Math.max(Arrays.stream(depths).max().getAsInt(), 1);
+
+        return image;
+    } // method decode
+
+    private static int[] steps(int[] code) {
+        int[] steps = new int[code.length + 1];
+        int step = 0;
+
+        for (int pc = 0; pc < code.length; pc = pc + Instruction.width(code[pc])) {
+            Arrays.fill(steps, pc, Math.min(pc + Instruction.width(code[pc]), code.length), step);
+
+            if (code[pc] != Instruction.LABEL)
+                step++;
+        }
+
+        steps[code.length] = step;
+
+        return steps;
+    } // method steps
+
+    // adds a counter at the offset and gives the offset after it
+
+    private static int count(ProgramImage image, int[] program, int offset, int line) {
+        program[offset] = Instruction.LABEL;
+        program[offset + 1] = image.counters++;
+        image.lines[offset] = line;
+
+        return offset + 2;
+    } // method count
+
+    // the profile of an execution from the counts of its counters, the instructions after the
+    // one that failed, if one did, ran once less than their block
+
+    ExecutionProfile profile(long[] counts, int failed) {
+        ExecutionProfile profile = new ExecutionProfile(this.name);
+        long executions = 0;
+        boolean branch = false;
+
+        for (int pc = 0; pc < this.code.length; pc = pc + Instruction.width(this.code[pc])) {
+            Opcode opcode = Opcode.valueOf(this.code[pc]);
+
+            if (opcode == Opcode.LABEL && branch) {
+                profile.addBranch(profile.size() - 1, executions - counts[this.code[pc + 1]], counts[this.code[pc + 1]]);
+                branch = false;
+            } else if (opcode == Opcode.LABEL) {
+                executions = counts[this.code[pc + 1]];
+                profile.addBlock(profile.size(), getLabel(pc), executions);
+            } else {
+                profile.addInstruction(this.lines[pc], opcode, executions);
+                branch = opcode.getOperand() == Opcode.Operand.LABEL && opcode != Opcode.GOTO;
+
+                if (pc == failed)
+                    executions--;
+            }
+        }
+
+        return profile;
+    } // method profile
+
+    // number of the variable or the array of an instruction
+
+    private static int number(StackMachineCode code, int i, int[] numbers, boolean array) throws Exception {
+        int symbol = (int) code.getOperand(i);
+
+        if (code.isArray(symbol) != array)
+            throw new Exception("\nError at line " + code.getLine(i) + ": '" + code.getName(symbol) + "' " + (array ? "is not" : "is") + " an array");
+
+        return numbers[symbol];
+    } // method number
+
+    // depth of the stack before every instruction, and at the end of the code, -1 where the
+    // program never goes. Every path to an instruction must reach it with the same depth and no
+    // instruction may take more values than the stack has
+
+    private static int[] stackDepths(StackMachineCode code) throws Exception {
+        int[] depths = new int[code.size() + 1];
+        Deque<Integer> pending = new ArrayDeque<Integer>();
+
+        Arrays.fill(depths, -1);
+
+        depths[0] = 0;
+        pending.push(0);
+
+        while (!pending.isEmpty()) {
+            int i = pending.pop();
+
+            if (i == code.size())
+                continue;
+
+            Opcode opcode = code.getOpcode(i);
+
+            if (depths[i] < opcode.getPops())
+                throw new Exception("\nError at line " + code.getLine(i) + ": '" + opcode.getMnemonic() + "' takes a value from an empty stack");
+
+            int depth = depths[i] - opcode.getPops() + opcode.getPushes();
+
+            if (opcode.getOperand() == Opcode.Operand.LABEL)
+                follow(code, depths, pending, (int) code.getOperand(i), depth, i);
+
+            if (opcode != Opcode.GOTO && opcode != Opcode.HALT)
+                follow(code, depths, pending, i + 1, depth, i);
+        }
+
+        return depths;
+    } // method stackDepths
+
+    private static void follow(StackMachineCode code, int[] depths, Deque<Integer> pending, int target, int depth, int from) throws Exception {
+        if (depths[target] == -1) {
+            depths[target] = depth;
+            pending.push(target);
+        } else if (depths[target] != depth) {
+            throw new Exception("\nError at line " + code.getLine(from) + ": the stack does not have the same depth on every path to instruction " + target);
+        }
+    } // method follow
+
+} // class ProgramImage
\ No newline at end of file
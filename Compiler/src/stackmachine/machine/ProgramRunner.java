@@ -0,0 +1,224 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Runs batches of stack machine programs at the same time
+ *
+ * Every program runs in its own execution context, with its own memory, stack and output, on a
+ * virtual thread when the JVM has them and on a thread for every processor otherwise. The
+ * contexts share one stack machine, so a hot loop is compiled once for all the runs of a program,
+ * and every file is decoded once into an image that all its runs share, as an image is never
+ * changed by a run. The results are in the order of the programs, with the report of the batch.
+ *
+ * A program that fails does not stop the others, its result keeps the error and the trace of
+ * its last jumps. An error of the JVM, like a program with arrays larger than the memory, only
+ * fails the program that caused it.
+ */
+public class ProgramRunner {
+    private final StackMachine machine;
+
+    // the image of every file by its absolute path, loaded by the first run that needs it
+
+    private final Map<String, CompletableFuture<ProgramImage>> images;
+
+    // a machine that writes no trace, as the runner keeps it in the result
+
+    public ProgramRunner() {
+        this(new StackMachine(null));
+
+        this.machine.setTrace(null);
+    } // constructor ProgramRunner
+
+    // the output of the programs stays in their results whatever the printer of the machine
+
+    public ProgramRunner(StackMachine machine) {
+        this.machine = machine;
+        this.images = new ConcurrentHashMap<String, CompletableFuture<ProgramImage>>();
+    } // constructor ProgramRunner
+
+    public StackMachine getMachine() {
+        return this.machine;
+    } // method getMachine
+
+    // the shared image of a file, loaded once even when many runs ask for it at the same time
+
+    public ProgramImage getImage(String fileName) throws Exception {
+        CompletableFuture<ProgramImage> image = new CompletableFuture<ProgramImage>();
+        CompletableFuture<ProgramImage> loaded = this.images.putIfAbsent(Paths.get(fileName).toAbsolutePath().normalize().toString(), image);
+
+        if (loaded == null) {
+            try {
+                image.complete(ProgramImage.load(fileName, this.machine.isProfiling()));
+            } catch (Exception e) {
+                image.completeExceptionally(e);
+            }
+
+            loaded = image;
+        }
+
+        try {
+            return loaded.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    } // method getImage
+
+    public int getImageCount() {
+        return this.images.size();
+    } // method getImageCount
+
+    // forgets the images, so the files are loaded again
+
+    public void clear() {
+        this.images.clear();
+    } // method clear
+
+    public RunReport runAll(Collection<String> programs) throws Exception {
+        ExecutorService executor = newExecutor();
+
+        try {
+            return runAll(programs, executor);
+        } finally {
+            executor.shutdown();
+        }
+    } // method runAll
+
+    // runs the programs in the given executor, the results are in the order of the programs
+
+    public RunReport runAll(Collection<String> programs, Executor executor) throws Exception {
+        long start = System.nanoTime();
+
+        List<CompletableFuture<RunResult>> tasks = new ArrayList<CompletableFuture<RunResult>>();
+
+        for (String program : programs)
+            tasks.add(CompletableFuture.supplyAsync(() -> run(program), executor));
+
+        List<RunResult> results = new ArrayList<RunResult>();
+
+        for (CompletableFuture<RunResult> task : tasks)
+            results.add(task.join());
+
+        return new RunReport(results, System.nanoTime() - start);
+    } // method runAll
+
+    public RunResult run(String program) {
+        long start = System.nanoTime();
+        ProgramImage image;
+
+        try {
+            image = getImage(program);
+        } catch (Throwable e) {
+            return new RunResult(program, "", error(e), null, System.nanoTime() - start);
+        }
+
+        return run(image, start);
+    } // method run
+
+    public RunResult run(ProgramImage image) {
+        return run(image, System.nanoTime());
+    } // method run
+
+    private RunResult run(ProgramImage image, long start) {
+        ExecutionContext context = null;
+
+        try {
+            context = new ExecutionContext(image, null, this.machine.getTraceSize());
+
+            this.machine.run(context);
+
+            return new RunResult(image.getName(), context.getOutput(), null, null, System.nanoTime() - start);
+        } catch (Throwable e) {
+
+            // a context that could not be made has no output and no trace
+
+            if (context == null)
+                return new RunResult(image.getName(), "", error(e), null, System.nanoTime() - start);
+
+            return new RunResult(image.getName(), context.getOutput(), error(e), trace(context), System.nanoTime() - start);
+        }
+    } // method run
+
+    // the error of a result, an error of the JVM is kept as the cause of an exception
+
+    static Exception error(Throwable e) {
+        if (e instanceof Exception)
+            return (Exception) e;
+
+        return new Exception("\nError: the program cannot be run: " + e, e);
+    } // method error
+
+    static String trace(ExecutionContext context) {
+        StringWriter trace = new StringWriter();
+
+        try {
+            context.trace.write(trace, "failed");
+        } catch (Exception e) {
+            return null;
+        }
+
+        return trace.toString();
+    } // method trace
+
+    // a virtual thread for every task from Java 21, found by reflection so the runner also
+    // builds on older JVMs, and a thread for every processor before
+
+    public static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    } // method newExecutor
+
+    // runs the programs given as arguments, every one the number of times after -r, and writes
+    // their outputs in order and the report of the batch
+
+    public static void main(String[] args) {
+
+        try {
+
+            List<String> programs = new ArrayList<String>();
+            int repeat = 1;
+
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-r") && i + 1 < args.length)
+                    repeat = Integer.parseInt(args[++i]);
+                else
+                    programs.add(args[i]);
+            }
+
+            List<String> batch = new ArrayList<String>();
+
+            for (int run = 0; run < repeat; run++)
+                batch.addAll(programs);
+
+            RunReport report = new ProgramRunner().runAll(batch);
+            Writer output = new OutputStreamWriter(System.out);
+
+            report.writeOutputs(output);
+            output.write("\n");
+            report.write(output);
+
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        }
+    } // method main
+
+} // class ProgramRunner
\ No newline at end of file
@@ -0,0 +1,108 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Results of a batch of programs in the order they were given, and the throughput of the batch
+ *
+ * The time of the batch is the time from the first program to the last result, the time of a
+ * program the time of its own run. Their ratio is the number of programs that ran at the same
+ * time on average.
+ */
+public class RunReport {
+    private final List<RunResult> results;
+    private final long time;
+
+    public RunReport(List<RunResult> results, long time) {
+        this.results = Collections.unmodifiableList(results);
+        this.time = time;
+    } // constructor RunReport
+
+    public List<RunResult> getResults() {
+        return this.results;
+    } // method getResults
+
+    // time of the batch in nanoseconds
+
+    public long getTime() {
+        return this.time;
+    } // method getTime
+
+    public int getSuccessCount() {
+        int count = 0;
+
+        for (RunResult result : this.results)
+            if (result.isSuccess())
+                count++;
+
+        return count;
+    } // method getSuccessCount
+
+    public int getFailureCount() {
+        return this.results.size() - getSuccessCount();
+    } // method getFailureCount
+
+    // time of all the programs in nanoseconds
+
+    public long getRunTime() {
+        long total = 0;
+
+        for (RunResult result : this.results)
+            total = total + result.getTime();
+
+        return total;
+    } // method getRunTime
+
+    // programs run by second
+
+    public double getThroughput() {
+        return this.time == 0 ? 0 : this.results.size() * 1e9 / this.time;
+    } // method getThroughput
+
+    // the outputs of the programs, one after the other with the name of the program
+
+    public void writeOutputs(Writer output) throws Exception {
+        for (RunResult result : this.results) {
+            output.write(result.getProgram() + ":\n" + result.getOutput());
+
+            if (!result.isSuccess())
+                output.write(result.getError().getMessage().strip() + "\n");
+        }
+
+        output.flush();
+    } // method writeOutputs
+
+    public void write(Writer output) throws Exception {
+        RunResult longest = null;
+        long characters = 0;
+
+        for (RunResult result : this.results) {
+            if (longest == null || result.getTime() > longest.getTime())
+                longest = result;
+
+            characters = characters + result.getOutput().length();
+        }
+
+        output.write(String.format("Ran %d programs in %.1f ms: %d succeeded, %d failed%n", this.results.size(), this.time / 1e6, getSuccessCount(), getFailureCount()));
+        output.write(String.format("%-12s %.1f programs/s%n", "throughput", getThroughput()));
+
+        if (longest != null) {
+            output.write(String.format("%-12s %.1f ms, %.3f ms by program, longest %.3f ms '%s'%n", "run time", getRunTime() / 1e6, getRunTime() / 1e6 / this.results.size(), longest.getTime() / 1e6, longest.getProgram()));
+            output.write(String.format("%-12s %.2f programs at a time%n", "concurrency", this.time == 0 ? 0 : (double) getRunTime() / this.time));
+        }
+
+        output.write(String.format("%-12s %d characters%n", "output", characters));
+
+        for (RunResult result : this.results)
+            if (!result.isSuccess())
+                output.write(result + "\n");
+
+        output.flush();
+    } // method write
+
+} // class RunReport
\ No newline at end of file
@@ -0,0 +1,65 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+/*
+ * Result of the run of one program in a batch: its output, and the error that stopped it with
+ * the trace of its last jumps when it failed
+ */
+public class RunResult {
+    private final String program;
+    private final String output;
+    private final Exception error;
+    private final String trace;
+    private final long time;
+
+    public RunResult(String program, String output, Exception error, String trace, long time) {
+        this.program = program;
+        this.output = output;
+        this.error = error;
+        this.trace = trace;
+        this.time = time;
+    } // constructor RunResult
+
+    public String getProgram() {
+        return this.program;
+    } // method getProgram
+
+    // what the program printed, up to the error when it failed
+
+    public String getOutput() {
+        return this.output;
+    } // method getOutput
+
+    public boolean isSuccess() {
+        return this.error == null;
+    } // method isSuccess
+
+    // the error of a program that did not load or failed, or null
+
+    public Exception getError() {
+        return this.error;
+    } // method getError
+
+    // the trace of a program that failed while it ran, or null
+
+    public String getTrace() {
+        return this.trace;
+    } // method getTrace
+
+    // time of the run in nanoseconds, with the load of an image that was not loaded yet
+
+    public long getTime() {
+        return this.time;
+    } // method getTime
+
+    @Override
+    public String toString() {
+        if (isSuccess())
+            return String.format("'%s' ran successfully", this.program);
+
+        return String.format("'%s' failed:%s", this.program, this.error.getMessage());
+    } // method toString
+
+} // class RunResult
\ No newline at end of file
@@ -0,0 +1,194 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import java.io.BufferedWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Sampling profiler of the programs that run on the stack machines it is given to
+ *
+ * A daemon thread wakes up at every interval and reads the position of every running execution,
+ * the offset of the last instruction it jumped to. A sample is a stack: the program, the loops
+ * around the position from the outermost, named by their label, and the line of the program at
+ * the position, or its offset and instruction when the code has no line table. A loop is the
+ * code from a label to the last goto that jumps back to it. The stacks are written in the
+ * collapsed format of the flame graph tools, one stack and its number of samples per line:
+ *
+ * sm factorial 10.txt;label 0;line 7 42
+ *
+ * The interpreter only pays for a store at every jump, and the sampler works on its own thread,
+ * so it can stay on for long runs. A loop that runs compiled is sampled at its label.
+ */
+public class Sampler {
+    public static final long INTERVAL = 10;
+
+    private final long interval;
+
+    // the executions that are running, and the stack of every position of their images
+
+    private final Set<ExecutionContext> contexts;
+    private final Map<ProgramImage, String[]> frames;
+
+    private final Map<String, Long> stacks;
+    private long samples;
+
+    private Thread thread;
+
+    public Sampler() {
+        this(INTERVAL);
+    } // constructor Sampler
+
+    // milliseconds between two samples
+
+    public Sampler(long interval) {
+        if (interval <= 0)
+            throw new IllegalArgumentException("the interval of the samples must be positive");
+
+        this.interval = interval;
+        this.contexts = ConcurrentHashMap.newKeySet();
+        this.frames = new WeakHashMap<ProgramImage, String[]>();
+        this.stacks = new TreeMap<String, Long>();
+        this.samples = 0;
+        this.thread = null;
+    } // constructor Sampler
+
+    public synchronized void start() {
+        if (this.thread != null)
+            return;
+
+        this.thread = new Thread(this::sample, "stack machine sampler");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    } // method start
+
+    public void stop() throws InterruptedException {
+        Thread thread;
+
+        synchronized (this) {
+            thread = this.thread;
+            this.thread = null;
+        }
+
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+        }
+    } // method stop
+
+    void attach(ExecutionContext context) {
+        this.contexts.add(context);
+    } // method attach
+
+    void detach(ExecutionContext context) {
+        this.contexts.remove(context);
+    } // method detach
+
+    public synchronized long getSampleCount() {
+        return this.samples;
+    } // method getSampleCount
+
+    // samples by stack, in the order of the stacks
+
+    public synchronized Map<String, Long> getStacks() {
+        return new TreeMap<String, Long>(this.stacks);
+    } // method getStacks
+
+    public synchronized void clear() {
+        this.stacks.clear();
+        this.samples = 0;
+    } // method clear
+
+    public void write(Writer output) throws Exception {
+        Writer stacks = output instanceof BufferedWriter ? output : new BufferedWriter(output);
+
+        for (Map.Entry<String, Long> stack : getStacks().entrySet())
+            stacks.write(stack.getKey() + " " + stack.getValue() + "\n");
+
+        stacks.flush();
+    } // method write
+
+    public void write(String fileName) throws Exception {
+        try (Writer output = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            write(output);
+        }
+    } // method write
+
+    private void sample() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(this.interval);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            for (ExecutionContext context : this.contexts) {
+                String stack = stack(context.getImage(), context.getPosition());
+
+                synchronized (this) {
+                    this.stacks.merge(stack, 1L, Long::sum);
+                    this.samples++;
+                }
+            }
+        }
+    } // method sample
+
+    // the stacks are only made by the thread of the sampler
+
+    private String stack(ProgramImage image, int position) {
+        String[] frames = this.frames.get(image);
+
+        if (frames == null) {
+            frames = new String[image.getCode().length];
+            this.frames.put(image, frames);
+        }
+
+        if (frames[position] == null)
+            frames[position] = frames(image, position);
+
+        return frames[position];
+    } // method stack
+
+    private static String frames(ProgramImage image, int position) {
+        int[] code = image.getCode();
+        int[] ends = new int[code.length];
+
+        // the end of every loop at its label
+
+        Arrays.fill(ends, -1);
+
+        for (int pc = 0; pc < code.length; pc = pc + Instruction.width(code[pc]))
+            if (code[pc] == Instruction.GOTO && code[pc + 1] <= pc)
+                ends[code[pc + 1]] = Math.max(ends[code[pc + 1]], pc);
+
+        StringBuilder stack = new StringBuilder(frame(image.getName()));
+
+        for (int label = 0; label <= position; label++)
+            if (ends[label] >= position)
+                stack.append(';').append(image.getLabel(label) >= 0 ? "label " + image.getLabel(label) : "loop at " + label);
+
+        if (image.getLine(position) > 0)
+            stack.append(";line ").append(image.getLine(position));
+        else
+            stack.append(';').append(position).append(' ').append(frame(Instruction.name(code[position])));
+
+        return stack.toString();
+    } // method frames
+
+    // a frame cannot have the separator of the frames or end a line
+
+    private static String frame(String name) {
+        return name.replace(';', ':').replace('\n', ' ');
+    } // method frame
+
+} // class Sampler
\ No newline at end of file
@@ -0,0 +1,85 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * A program given to a scheduler: its context, its share of the workers and what it used so far
+ *
+ * The numbers are changed by the workers between two slices, so read while the program runs
+ * they are those of its last slice.
+ */
+public class ScheduledProgram {
+    final ExecutionContext context;
+    final int priority;
+    final long budget;
+    final long sequence;
+    final long submitted;
+
+    // instructions times the stride divided by the priority, the program with the lowest runs next
+
+    long pass;
+
+    volatile long instructions;
+    volatile long slices;
+    volatile long time;
+
+    final CompletableFuture<RunResult> result;
+
+    ScheduledProgram(ExecutionContext context, int priority, long budget, long sequence, long pass) {
+        this.context = context;
+        this.priority = priority;
+        this.budget = budget;
+        this.sequence = sequence;
+        this.submitted = System.nanoTime();
+
+        this.pass = pass;
+
+        this.instructions = 0;
+        this.slices = 0;
+        this.time = 0;
+
+        this.result = new CompletableFuture<RunResult>();
+    } // constructor ScheduledProgram
+
+    public ProgramImage getImage() {
+        return this.context.image;
+    } // method getImage
+
+    public int getPriority() {
+        return this.priority;
+    } // method getPriority
+
+    // instructions the program can execute before it fails
+
+    public long getBudget() {
+        return this.budget;
+    } // method getBudget
+
+    public long getInstructions() {
+        return this.instructions;
+    } // method getInstructions
+
+    public long getSlices() {
+        return this.slices;
+    } // method getSlices
+
+    // time the program ran on the workers in nanoseconds
+
+    public long getTime() {
+        return this.time;
+    } // method getTime
+
+    public boolean isDone() {
+        return this.result.isDone();
+    } // method isDone
+
+    // the result when the program halts or fails, with the time from the submission to the end
+
+    public CompletableFuture<RunResult> getResult() {
+        return this.result;
+    } // method getResult
+
+} // class ScheduledProgram
\ No newline at end of file
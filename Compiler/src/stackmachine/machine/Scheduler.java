@@ -0,0 +1,257 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/*
+ * Runs many programs on a fixed pool of worker threads, a slice of instructions at a time
+ *
+ * Every program runs interpreted in its own context, compiled code could not be stopped. A
+ * worker takes the program that had the least of its share so far, runs it for a slice and puts
+ * it back, so a program that loops forever only takes its share of the workers. The interpreter
+ * stops a slice at the first goto back to a loop after the instructions of the slice, so a slice
+ * can be longer by the straight code of one loop.
+ *
+ * The share of a program is its priority: while they both wait, a program of priority 4
+ * executes twice the instructions of a program of priority 2. The pass of a program grows by its
+ * instructions divided by its priority, and the next program is the one with the lowest pass, or
+ * the oldest with the same pass. A program submitted later starts at the pass of the last program
+ * taken, so it cannot take the workers from the others until it catches up. A program with a
+ * budget fails at the end of the slice that reaches it.
+ *
+ * A switch moves the program between the queue and a worker and changes numbers, so it allocates
+ * nothing. The result of a program is made once, when it halts or fails. An error of the JVM in a
+ * slice fails its program only, and the worker goes on with the others.
+ */
+public class Scheduler {
+    public static final long SLICE = 10000;
+
+    public static final int MIN_PRIORITY = 1;
+    public static final int NORM_PRIORITY = 5;
+    public static final int MAX_PRIORITY = 10;
+
+    public static final long NO_BUDGET = Long.MAX_VALUE;
+
+    // the pass grows by the instructions times the stride divided by the priority, which divides
+    // the stride for every priority
+
+    private static final long STRIDE = 2520;
+
+    private final Interpreter interpreter;
+    private final long slice;
+    private final Thread[] workers;
+    private final int traceSize;
+
+    // the programs that wait for a worker, by pass and then in the order they were submitted
+
+    private final PriorityQueue<ScheduledProgram> queue;
+
+    private long pass;
+    private long sequence;
+    private boolean started;
+    private boolean shutdown;
+
+    private long instructions;
+    private long switches;
+
+    // a worker for every processor and the slice of the scheduler
+
+    public Scheduler() {
+        this(Runtime.getRuntime().availableProcessors(), SLICE);
+    } // constructor Scheduler
+
+    // the number of workers and the instructions of a slice
+
+    public Scheduler(int workers, long slice) {
+        this(workers, slice, Trace.SIZE);
+    } // constructor Scheduler
+
+    // the trace of every program keeps the given number of jumps
+
+    public Scheduler(int workers, long slice, int traceSize) {
+        if (workers <= 0)
+            throw new IllegalArgumentException("the scheduler needs at least one worker");
+
+        if (slice <= 0)
+            throw new IllegalArgumentException("a slice must have at least one instruction");
+
+        if (traceSize <= 0)
+            throw new IllegalArgumentException("the trace must keep at least one jump");
+
+        this.interpreter = new Interpreter();
+        this.slice = slice;
+        this.workers = new Thread[workers];
+        this.traceSize = traceSize;
+
+        this.queue = new PriorityQueue<ScheduledProgram>(Comparator.comparingLong((ScheduledProgram program) -> program.pass).thenComparingLong(program -> program.sequence));
+
+        this.pass = 0;
+        this.sequence = 0;
+        this.started = false;
+        this.shutdown = false;
+
+        this.instructions = 0;
+        this.switches = 0;
+    } // constructor Scheduler
+
+    public int getWorkerCount() {
+        return this.workers.length;
+    } // method getWorkerCount
+
+    public long getSlice() {
+        return this.slice;
+    } // method getSlice
+
+    // instructions executed by all the programs
+
+    public synchronized long getInstructions() {
+        return this.instructions;
+    } // method getInstructions
+
+    // slices run by all the programs
+
+    public synchronized long getSwitches() {
+        return this.switches;
+    } // method getSwitches
+
+    // programs that wait for a worker
+
+    public synchronized int getWaitingCount() {
+        return this.queue.size();
+    } // method getWaitingCount
+
+    public synchronized void start() {
+        if (this.started)
+            return;
+
+        for (int worker = 0; worker < this.workers.length; worker++) {
+            this.workers[worker] = new Thread(this::work, "stack machine worker " + worker);
+            this.workers[worker].setDaemon(true);
+            this.workers[worker].start();
+        }
+
+        this.started = true;
+    } // method start
+
+    // takes no more programs and waits for the workers to finish the programs it has
+
+    public void shutdown() throws InterruptedException {
+        synchronized (this) {
+            this.shutdown = true;
+            notifyAll();
+        }
+
+        for (Thread worker : this.workers)
+            if (worker != null)
+                worker.join();
+    } // method shutdown
+
+    public ScheduledProgram submit(ProgramImage image) {
+        return submit(image, NORM_PRIORITY, NO_BUDGET);
+    } // method submit
+
+    public ScheduledProgram submit(ProgramImage image, int priority, long budget) {
+        if (priority < MIN_PRIORITY || priority > MAX_PRIORITY)
+            throw new IllegalArgumentException("the priority must be from " + MIN_PRIORITY + " to " + MAX_PRIORITY);
+
+        if (budget <= 0)
+            throw new IllegalArgumentException("the budget must be at least one instruction");
+
+        // the memory of the program is allocated before the lock, the workers never wait for it
+
+        ExecutionContext context = new ExecutionContext(image, null, this.traceSize);
+
+        synchronized (this) {
+            if (this.shutdown)
+                throw new IllegalStateException("the scheduler is shut down");
+
+            ScheduledProgram program = new ScheduledProgram(context, priority, budget, this.sequence++, this.pass);
+
+            this.queue.add(program);
+            notify();
+
+            return program;
+        }
+    } // method submit
+
+    private void work() {
+        ScheduledProgram program;
+
+        try {
+            while ((program = next()) != null) {
+                try {
+                    run(program);
+                } catch (Throwable e) {
+
+                    // the result of the program could not be made, its future fails instead
+
+                    program.result.completeExceptionally(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            return;
+        }
+    } // method work
+
+    // the program with the lowest pass, or null when the scheduler is shut down and has nothing
+    // to run
+
+    private synchronized ScheduledProgram next() throws InterruptedException {
+        while (this.queue.isEmpty() && !this.shutdown)
+            wait();
+
+        ScheduledProgram program = this.queue.poll();
+
+        if (program != null)
+            this.pass = program.pass;
+
+        return program;
+    } // method next
+
+    // one slice of the program, which ends before its budget
+
+    private void run(ScheduledProgram program) {
+        ExecutionContext context = program.context;
+        long start = System.nanoTime();
+        Exception error = null;
+
+        context.stop = Math.min(program.instructions + this.slice, program.budget);
+
+        try {
+            this.interpreter.execute(context);
+        } catch (Throwable e) {
+            error = ProgramRunner.error(e);
+        }
+
+        long used = context.getInstructions() - program.instructions;
+
+        program.instructions = program.instructions + used;
+        program.slices = program.slices + 1;
+        program.time = program.time + System.nanoTime() - start;
+
+        if (error == null && !context.halted && program.instructions >= program.budget)
+            error = Interpreter.error(context, context.pc, "the program executed its budget of " + program.budget + " instructions");
+
+        synchronized (this) {
+            this.instructions = this.instructions + used;
+            this.switches++;
+
+            program.pass = program.pass + used * (STRIDE / program.priority);
+
+            if (error == null && !context.halted) {
+                this.queue.add(program);
+                notify();
+                return;
+            }
+        }
+
+        if (error == null)
+            program.result.complete(new RunResult(context.image.getName(), context.getOutput(), null, null, System.nanoTime() - program.submitted));
+        else
+            program.result.complete(new RunResult(context.image.getName(), context.getOutput(), error, ProgramRunner.trace(context), System.nanoTime() - program.submitted));
+    } // method run
+
+} // class Scheduler
\ No newline at end of file
@@ -0,0 +1,346 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import slu.stackmachine.IStackMachine;
+import stackmachine.compiler.sp3.ExecutionProfile;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/*
+ * Stack machine that runs the text and binary programs of the compiler, and the programs of
+ * the earlier sprints
+ *
+ * A program is decoded once into a ProgramImage and then executed by the interpreter, or, when
+ * compilation is on, by the JVM class JvmCompiler makes of it. A program that cannot be compiled
+ * is interpreted. The output of print goes to the standard output, one value per line.
+ *
+ * The interpreter counts the jumps back to every loop. A loop that repeats more than the hot
+ * loop threshold is compiled alone and goes on compiled from its label, and the interpreter runs
+ * the rest of the program, so a short program never waits for the compiler. Every loop is
+ * compiled once for every image, and runs compiled every time it is reached with the types it
+ * was compiled for.
+ *
+ * With profiling on, every program is interpreted from a profiled image that counts the
+ * executions of its instructions, blocks and branches. When the program halts or fails, the
+ * report goes to the report stream, the standard error by default, and the profile to a file
+ * named like the program with .profile at the end. The profile stays in the context of the
+ * execution, so programs profiled at the same time never mix their counts, and the file is
+ * replaced at once, so it always holds the whole profile of one of them. A sampler, which costs
+ * much less, can be given to the machine instead, and samples its programs while they run.
+ *
+ * Every execution keeps a trace of its last jumps. When a program fails, the last instructions
+ * it executed, with the values its jumps compared and the operands of the instruction that
+ * failed, go to the trace stream, the standard error by default.
+ *
+ * Programs can run at the same time on one machine, every one in its own context, as
+ * ProgramRunner does with batches of programs. A Scheduler runs many long programs on a few
+ * threads instead, interpreted a slice of instructions at a time.
+ */
+public class StackMachine implements IStackMachine {
+    public static final int HOT_LOOP = 1000;
+
+    private Interpreter interpreter;
+    private PrintStream printer;
+
+    private boolean compiled;
+    private int hotLoop;
+    private JvmCompiler compiler;
+
+    private boolean profiling;
+    private PrintStream report;
+    private Sampler sampler;
+
+    private int traceSize;
+    private PrintStream trace;
+
+    // the compiled class of every image, null for the images that cannot be compiled
+
+    private Map<ProgramImage, CompiledProgram> classes;
+
+    // the compiled loops of every image by the offset of their label, null for the loops that
+    // cannot be compiled
+
+    private Map<ProgramImage, Map<Integer, CompiledProgram>> loops;
+
+    public StackMachine() {
+        this(System.out);
+    } // constructor StackMachine
+
+    public StackMachine(PrintStream printer) {
+        this.interpreter = new Interpreter();
+        this.printer = printer;
+
+        this.compiled = false;
+        this.hotLoop = HOT_LOOP;
+        this.compiler = new JvmCompiler();
+        this.classes = Collections.synchronizedMap(new WeakHashMap<ProgramImage, CompiledProgram>());
+        this.loops = new WeakHashMap<ProgramImage, Map<Integer, CompiledProgram>>();
+
+        this.profiling = false;
+        this.report = System.err;
+        this.sampler = null;
+
+        this.traceSize = Trace.SIZE;
+        this.trace = System.err;
+    } // constructor StackMachine
+
+    public boolean isCompiled() {
+        return this.compiled;
+    } // method isCompiled
+
+    public void setCompiled(boolean compiled) {
+        this.compiled = compiled;
+    } // method setCompiled
+
+    // jumps back to a loop before it is compiled, 0 to only interpret
+
+    public int getHotLoop() {
+        return this.hotLoop;
+    } // method getHotLoop
+
+    public void setHotLoop(int hotLoop) {
+        if (hotLoop < 0)
+            throw new IllegalArgumentException("the hot loop threshold cannot be negative");
+
+        this.hotLoop = hotLoop;
+    } // method setHotLoop
+
+    public boolean isProfiling() {
+        return this.profiling;
+    } // method isProfiling
+
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    } // method setProfiling
+
+    // stream of the reports of the profiles, null for no report
+
+    public void setReport(PrintStream report) {
+        this.report = report;
+    } // method setReport
+
+    public Sampler getSampler() {
+        return this.sampler;
+    } // method getSampler
+
+    // the sampler of the programs that run on the machine, null for none
+
+    public void setSampler(Sampler sampler) {
+        this.sampler = sampler;
+    } // method setSampler
+
+    // jumps kept in the trace of every execution
+
+    public int getTraceSize() {
+        return this.traceSize;
+    } // method getTraceSize
+
+    public void setTraceSize(int traceSize) {
+        if (traceSize <= 0)
+            throw new IllegalArgumentException("the trace must keep at least one jump");
+
+        this.traceSize = traceSize;
+    } // method setTraceSize
+
+    // stream of the traces of the programs that fail, null for none
+
+    public void setTrace(PrintStream trace) {
+        this.trace = trace;
+    } // method setTrace
+
+    @Override
+    public void run(String fileName) throws Exception {
+        run(ProgramImage.load(fileName, this.profiling));
+    } // method run
+
+    // a profiled image always runs in the interpreter, with the counts of the profile, the
+    // context gives the profile and the trace of the execution
+
+    public ExecutionContext run(ProgramImage image) throws Exception {
+        ExecutionContext context = new ExecutionContext(image, this.printer, this.traceSize);
+
+        run(context);
+
+        return context;
+    } // method run
+
+    // runs a new context, which keeps the output of the program when it has no printer, so
+    // programs can run at the same time on one machine and share its compiled code
+
+    public void run(ExecutionContext context) throws Exception {
+        ProgramImage image = context.image;
+        CompiledProgram program = this.compiled && !image.isProfiled() ? compiledProgram(image) : null;
+        Sampler sampler = this.sampler;
+
+        context.hotLoop = image.isProfiled() ? 0 : this.hotLoop;
+
+        if (sampler != null)
+            sampler.attach(context);
+
+        try {
+            if (program != null)
+                runCompiled(context, program.bind(context));
+
+            while (!context.halted) {
+                this.interpreter.execute(context);
+
+                if (!context.halted)
+                    runLoop(context);
+            }
+        } catch (ArithmeticException | IndexOutOfBoundsException | ArrayStoreException e) {
+            throw trace(context, Interpreter.error(context, context.pc, e));
+        } catch (Exception e) {
+            throw trace(context, e);
+        } finally {
+            if (sampler != null)
+                sampler.detach(context);
+
+            context.flush();
+
+            if (image.isProfiled())
+                profile(context);
+        }
+    } // method run
+
+    // the report and the file of the profile of an execution, a file that cannot be written is
+    // in the report instead of hiding the end of the program, and the report is written at once
+    // so the reports of programs that end at the same time are not mixed
+
+    private void profile(ExecutionContext context) {
+        ExecutionProfile profile = context.getProfile();
+
+        String fileName = context.image.getName() + ".profile";
+        String failure = null;
+
+        try {
+            profile.write(fileName);
+        } catch (Exception e) {
+            failure = "the profile cannot be written to " + fileName + ": " + e.getMessage();
+        }
+
+        if (this.report != null) {
+            try {
+                StringWriter output = new StringWriter();
+
+                profile.writeReport(output);
+
+                if (failure != null)
+                    output.write(failure + "\n");
+
+                this.report.print(output);
+                this.report.flush();
+            } catch (Exception e) {
+                this.report.println("the profile cannot be reported: " + e.getMessage());
+            }
+        }
+    } // method profile
+
+    // the interpreter stopped at the label of a hot loop
+
+    private void runLoop(ExecutionContext context) {
+        CompiledProgram loop = compiledLoop(context);
+        int label = context.pc;
+
+        if (loop == null)
+            return;
+
+        if (!loop.accepts(context)) {
+
+            // the loop was compiled for other types, the interpreter runs it and tries again later
+
+            context.backEdges[label] = 0;
+            return;
+        }
+
+        runCompiled(context, loop.bind(context));
+
+        // the next time the loop is reached it goes on compiled after one jump back
+
+        context.backEdges[label] = context.hotLoop - 1;
+    } // method runLoop
+
+    // compiled code is a jump in the trace, from where it starts to where it stops or fails
+
+    private static void runCompiled(ExecutionContext context, Runnable code) {
+        int start = context.pc;
+
+        try {
+            code.run();
+        } finally {
+            context.trace.jump(start, context.pc, Trace.COMPILED, 0);
+        }
+    } // method runCompiled
+
+    private Exception trace(ExecutionContext context, Exception e) {
+        if (this.trace != null) {
+            try {
+                Writer output = new OutputStreamWriter(this.trace);
+
+                context.trace.write(output, "failed");
+            } catch (Exception ignored) {
+
+                // the error of the program matters more than its trace
+
+            }
+        }
+
+        return e;
+    } // method trace
+
+    private CompiledProgram compiledLoop(ExecutionContext context) {
+        Map<Integer, CompiledProgram> loops;
+
+        synchronized (this.loops) {
+            loops = this.loops.get(context.image);
+
+            if (loops == null) {
+                loops = new HashMap<Integer, CompiledProgram>();
+                this.loops.put(context.image, loops);
+            }
+        }
+
+        synchronized (loops) {
+            if (loops.containsKey(context.pc))
+                return loops.get(context.pc);
+
+            CompiledProgram loop;
+
+            try {
+                loop = this.compiler.compileLoop(context);
+            } catch (Exception e) {
+                loop = null;
+            }
+
+            loops.put(context.pc, loop);
+
+            return loop;
+        }
+    } // method compiledLoop
+
+    private CompiledProgram compiledProgram(ProgramImage image) {
+        if (this.classes.containsKey(image))
+            return this.classes.get(image);
+
+        CompiledProgram program;
+
+        try {
+            program = this.compiler.compile(image);
+        } catch (Exception e) {
+            program = null;
+        }
+
+        this.classes.put(image, program);
+
+        return program;
+    } // method compiledProgram
+
+} // class StackMachine
\ No newline at end of file
@@ -0,0 +1,247 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import stackmachine.compiler.sp3.Opcode;
+
+import java.io.Writer;
+
+/*
+ * The last jumps of an execution, for the post-mortem of an error
+ *
+ * The trace is a ring of a fixed number of jumps, allocated with the context. A jump keeps
+ * where it was, where it went and the values it compared, and the loops that ran compiled are
+ * kept as jumps too. Only the jumps that are taken are kept, a conditional jump that goes on
+ * is the same as straight code. The code between two jumps runs straight, so the jumps give back
+ * every instruction executed since the oldest one, and the interpreter only pays for the trace
+ * when it jumps, without allocating.
+ *
+ * Where the last jump went is also the position of the execution, which the sampler reads from
+ * another thread without a fence. It may read a position a little old, never a wrong one, as
+ * the jump is written before the count.
+ *
+ * The jumps also count the instructions the interpreter executed exactly: at every jump, the
+ * straight code from where the last one went to the jump, by the number of instructions the
+ * image has before every offset. The instructions of compiled code are not counted.
+ */
+final class Trace {
+    static final int SIZE = 256;
+
+    // the values of a jump: none, one or two values of the stack with their flags, two ints of
+    // a typed comparison, or a loop that ran compiled
+
+    static final byte NONE = 0;
+    static final byte VALUE = 1;
+    static final byte VALUES = 2;
+    static final byte INTS = 3;
+    static final byte COMPILED = 4;
+
+    private final ExecutionContext context;
+    private final int mask;
+
+    // every jump is where it was above 32 bits and where it went below
+
+    private final long[] jumps;
+    private final byte[] kinds;
+    private final long[] values;
+    private final boolean[] real;
+
+    // the stack of the context
+
+    private final long[] stackInts;
+    private final double[] stackFloats;
+    private final boolean[] stackReal;
+
+    private long count;
+
+    // instructions executed up to the entry, the number of instructions before where the last
+    // jump went
+
+    private final int[] steps;
+    long executed;
+    private int entry;
+
+    // the size is rounded up to a power of 2
+
+    Trace(ExecutionContext context, int size) {
+        int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1);
+
+        this.context = context;
+        this.mask = capacity - 1;
+
+        this.jumps = new long[capacity];
+        this.kinds = new byte[capacity];
+        this.values = new long[capacity * 2];
+        this.real = new boolean[capacity * 2];
+
+        this.stackInts = context.ints;
+        this.stackFloats = context.floats;
+        this.stackReal = context.real;
+
+        this.count = 0;
+
+        this.steps = context.image.getSteps();
+        this.executed = 0;
+        this.entry = 0;
+    } // constructor Trace
+
+    int getPosition() {
+        long count = this.count;
+
+        return count == 0 ? 0 : (int) this.jumps[(int) (count - 1) & this.mask];
+    } // method getPosition
+
+    // instructions executed before the offset, which the execution reached from where the last
+    // jump went without a jump
+
+    long getInstructions(int pc) {
+        return this.executed + this.steps[pc] - this.entry;
+    } // method getInstructions
+
+    // keeps a jump and gives where it went, compiled code starts before its first instruction
+
+    int jump(int from, int to, byte kind, int top) {
+        int jump = (int) this.count & this.mask;
+
+        this.executed = this.executed + this.steps[from] - this.entry + (kind == COMPILED ? 0 : 1);
+        this.entry = this.steps[to];
+
+        this.jumps[jump] = (long) from << 32 | to;
+        this.kinds[jump] = kind;
+
+        if (kind != NONE && kind != COMPILED) {
+            value(jump * 2, top, kind == INTS);
+
+            if (kind != VALUE)
+                value(jump * 2 + 1, top + 1, kind == INTS);
+        }
+
+        this.count++;
+
+        return to;
+    } // method jump
+
+    private void value(int slot, int top, boolean ints) {
+        this.real[slot] = !ints && this.stackReal[top];
+        this.values[slot] = this.real[slot] ? Double.doubleToRawLongBits(this.stackFloats[top]) : this.stackInts[top];
+    } // method value
+
+    // every instruction from the oldest jump to the instruction of the context, which is marked,
+    // with the values the instruction takes from the stack when the context is interpreted there
+
+    void write(Writer output, String mark) throws Exception {
+        ProgramImage image = this.context.image;
+        long oldest = Math.max(this.count - this.mask - 1, 0);
+        int start = oldest == 0 ? 0 : to((int) oldest & this.mask);
+        boolean failed = false;
+
+        output.write("Trace of " + image.getName() + (oldest > 0 ? " from jump " + oldest : "") + ":\n");
+
+        for (long jump = oldest; jump < this.count; jump++) {
+            int entry = (int) jump & this.mask;
+
+            if (jump > oldest || oldest == 0)
+                start = straight(output, start, from(entry));
+
+            if (this.kinds[entry] == COMPILED) {
+                output.write(String.format("%8s compiled from %d to %d%n", "", from(entry), to(entry)));
+            } else if (jump > oldest || oldest == 0) {
+                output.write(line(from(entry), jumpValues(entry)));
+            }
+
+            start = to(entry);
+        }
+
+        // compiled code leaves the stack empty, so an instruction right after it cannot fail, and
+        // the stack of the context is not the one of the code that failed
+
+        if (this.count > 0 && this.kinds[(int) (this.count - 1) & this.mask] == COMPILED)
+            failed = to((int) (this.count - 1) & this.mask) == this.context.pc;
+
+        straight(output, start, this.context.pc);
+
+        String values = "";
+
+        if (!failed && image.getDepth(this.context.pc) >= 0) {
+            int depth = image.getDepth(this.context.pc);
+
+            for (int top = Math.max(depth - Opcode.valueOf(image.getCode()[this.context.pc]).getPops(), 0); top < depth; top++)
+                values = values + (values.isEmpty() ? "" : " ") + value(this.context.real[top] ? Double.doubleToRawLongBits(this.context.floats[top]) : this.context.ints[top], this.context.real[top]);
+        }
+
+        output.write(line(this.context.pc, (values.isEmpty() ? "" : " [" + values + "]") + "   <- " + mark));
+        output.flush();
+    } // method write
+
+    // the instructions from the start to the end, which is not written, and the end
+
+    private int straight(Writer output, int start, int end) throws Exception {
+        int[] code = this.context.image.getCode();
+
+        for (int pc = start; pc < end && pc < code.length; pc = pc + Instruction.width(code[pc]))
+            if (code[pc] != Instruction.LABEL)
+                output.write(line(pc, ""));
+
+        return end;
+    } // method straight
+
+    private int from(int entry) {
+        return (int) (this.jumps[entry] >>> 32);
+    } // method from
+
+    private int to(int entry) {
+        return (int) this.jumps[entry];
+    } // method to
+
+    // the values a conditional jump compared and whether it jumped
+
+    private String jumpValues(int entry) {
+        String jumped = to(entry) == from(entry) + 2 ? " goes on" : " jumps";
+
+        switch (this.kinds[entry]) {
+            case VALUE:
+                return " [" + value(this.values[entry * 2], this.real[entry * 2]) + "]" + jumped;
+            case VALUES:
+            case INTS:
+                return " [" + value(this.values[entry * 2], this.real[entry * 2]) + " " + value(this.values[entry * 2 + 1], this.real[entry * 2 + 1]) + "]" + jumped;
+            default:
+                return "";
+        }
+    } // method jumpValues
+
+    private static String value(long bits, boolean real) {
+        return real ? Double.toString(Double.longBitsToDouble(bits)) : Long.toString(bits);
+    } // method value
+
+    // offset, line and text of the instruction, with its constant, variable or array, or target
+
+    private String line(int pc, String values) {
+        ProgramImage image = this.context.image;
+        int[] code = image.getCode();
+        Opcode opcode = Opcode.valueOf(code[pc]);
+        String text = opcode.getMnemonic();
+
+        switch (opcode) {
+            case PUSH_INT:
+            case PUSH_ADDRESS:
+                text = text + " " + image.getInts()[code[pc + 1]];
+                break;
+            case PUSH_FLOAT:
+                text = text + " " + image.getFloats()[code[pc + 1]];
+                break;
+            case LOAD_ELEMENT:
+            case STORE_ELEMENT:
+                text = text + " " + image.getArrayName(code[pc + 1]);
+                break;
+            default:
+                if (opcode.getOperand() == Opcode.Operand.SYMBOL_INT)
+                    text = text + " " + code[pc + 1] + " " + image.getInts()[code[pc + 2]];
+                else if (opcode.getOperand() != Opcode.Operand.NONE)
+                    text = text + " " + code[pc + 1];
+        }
+
+        return String.format("%8d %-10s %s%s%n", pc, image.getLine(pc) > 0 ? "line " + image.getLine(pc) : "", text, values);
+    } // method line
+
+} // class Trace
\ No newline at end of file
@@ -0,0 +1,121 @@
+// Sprint 3 Project: Stack Machine Compiler
+// Marissa Bui - CSCI 3200
+
+package stackmachine.machine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+ * The elements of an array of a program, stored by the type of its declaration
+ *
+ * An int takes 4 bytes, a float 8 and a boolean 1 bit. A large array is kept outside the Java
+ * heap in direct buffers of at most 1 GB each, so its size is only limited by the direct memory
+ * of the JVM (-XX:MaxDirectMemorySize) and the collector never copies it. A small array is a heap
+ * buffer, which costs less to allocate for the short programs. An array without a type holds
+ * ints.
+ *
+ * Every access checks the index against the length of the array, and the error names the array.
+ */
+final class TypedArray {
+    static final int INT = 0;
+    static final int FLOAT = 1;
+    static final int BOOLEAN = 2;
+
+    // bytes of the largest array kept in the heap
+
+    private static final long HEAP_LIMIT = 1 << 16;
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private final String name;
+    private final int kind;
+    private final long length;
+    private final ByteBuffer[] segments;
+
+    TypedArray(String name, String type, long length) {
+        this.name = name;
+        this.kind = "float".equals(type) ? FLOAT : "boolean".equals(type) ? BOOLEAN : INT;
+        this.length = length;
+
+        long size = this.kind == INT ? length * 4 : this.kind == FLOAT ? length * 8 : (length + 7) / 8;
+
+        this.segments = new ByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+
+        for (int i = 0; i < this.segments.length; i++) {
+            int bytes = (int) Math.min(size - ((long) i << SEGMENT_SHIFT), 1L << SEGMENT_SHIFT);
+
+            this.segments[i] = (size > HEAP_LIMIT ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes)).order(ByteOrder.nativeOrder());
+        }
+    } // constructor TypedArray
+
+    String getName() {
+        return this.name;
+    } // method getName
+
+    long getLength() {
+        return this.length;
+    } // method getLength
+
+    // the elements of a float array are floats, the elements of the other arrays are ints
+
+    boolean isReal() {
+        return this.kind == FLOAT;
+    } // method isReal
+
+    long getInt(long index) {
+        check(index);
+
+        if (this.kind == INT)
+            return segment(index << 2).getInt((int) (index << 2) & SEGMENT_MASK);
+
+        return (segment(index >>> 3).get((int) (index >>> 3) & SEGMENT_MASK) >> (index & 7)) & 1;
+    } // method getInt
+
+    double getFloat(long index) {
+        check(index);
+
+        return segment(index << 3).getDouble((int) (index << 3) & SEGMENT_MASK);
+    } // method getFloat
+
+    // an int stored in a float array becomes a float, a boolean is true for every int but 0
+
+    void setInt(long index, long value) {
+        check(index);
+
+        if (this.kind == INT) {
+            if (value != (int) value)
+                throw new ArrayStoreException("the value " + value + " does not fit in int array '" + this.name + "'");
+
+            segment(index << 2).putInt((int) (index << 2) & SEGMENT_MASK, (int) value);
+        } else if (this.kind == FLOAT) {
+            segment(index << 3).putDouble((int) (index << 3) & SEGMENT_MASK, value);
+        } else {
+            ByteBuffer segment = segment(index >>> 3);
+            int offset = (int) (index >>> 3) & SEGMENT_MASK;
+            int bit = 1 << (index & 7);
+
+            segment.put(offset, (byte) (value != 0 ? segment.get(offset) | bit : segment.get(offset) & ~bit));
+        }
+    } // method setInt
+
+    void setFloat(long index, double value) {
+        check(index);
+
+        if (this.kind != FLOAT)
+            throw new ArrayStoreException("a float cannot be stored in " + (this.kind == INT ? "int" : "boolean") + " array '" + this.name + "'");
+
+        segment(index << 3).putDouble((int) (index << 3) & SEGMENT_MASK, value);
+    } // method setFloat
+
+    private ByteBuffer segment(long offset) {
+        return this.segments[(int) (offset >>> SEGMENT_SHIFT)];
+    } // method segment
+
+    private void check(long index) {
+        if (index < 0 || index >= this.length)
+            throw new IndexOutOfBoundsException("index " + index + " is outside array '" + this.name + "'");
+    } // method check
+
+} // class TypedArray
\ No newline at end of file